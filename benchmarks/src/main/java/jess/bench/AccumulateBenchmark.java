@@ -0,0 +1,64 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulate-heavy rules: each rule totals the readings of one kind in
+ * every group, so each assert or modify of a reading recomputes an
+ * accumulation. Half the readings are then modified to force the
+ * accumulations to be recomputed again.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccumulateBenchmark {
+    private static final int GROUPS = 10;
+
+    /** The number of readings. */
+    @Param({"100", "1000"})
+    public int factCount;
+
+    /** The number of accumulate rules; each totals one kind of reading. */
+    @Param({"1", "10"})
+    public int ruleCount;
+
+    private Rete m_engine;
+    private Fact[] m_readings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.eval("(deftemplate group (slot id))");
+        m_engine.eval("(deftemplate reading (slot group) (slot kind) (slot value))");
+        for (int r = 0; r < ruleCount; r++)
+            m_engine.eval("(defrule total-" + r + " (group (id ?g))" +
+                          " ?t <- (accumulate (bind ?s 0) (bind ?s (+ ?s ?v)) ?s" +
+                          " (reading (group ?g) (kind " + r + ") (value ?v))) => )");
+        m_readings = new Fact[factCount];
+    }
+
+    @Benchmark
+    public int accumulate() throws JessException {
+        Rete engine = m_engine;
+        engine.reset();
+        for (int g = 0; g < GROUPS; g++)
+            engine.assertFact(Workloads.fact(engine, "group", new String[] {"id"}, new Object[] {new Integer(g)}));
+
+        String[] slots = {"group", "kind", "value"};
+        for (int i = 0; i < factCount; i++)
+            m_readings[i] = engine.assertFact(Workloads.fact(engine, "reading", slots,
+                    new Object[] {new Integer(i % GROUPS), new Integer(i % ruleCount), new Integer(i)}));
+        for (int i = 0; i < factCount; i += 2)
+            engine.modify(m_readings[i], "value", new Value(-i, RU.INTEGER));
+        return engine.run();
+    }
+}
@@ -0,0 +1,61 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk assert/retract churn: assert a batch of facts that join with a
+ * fixed set of bucket facts, then retract them all, without running.
+ * Measures alpha tests, join memory updates in <tt>TokenTree</tt>, and
+ * activation creation and cancellation on the agenda.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChurnBenchmark {
+
+    /** The number of facts asserted and retracted per operation. */
+    @Param({"1000", "10000"})
+    public int factCount;
+
+    /** The number of rules; each joins items with one bucket. */
+    @Param({"1", "10", "50"})
+    public int ruleCount;
+
+    private Rete m_engine;
+    private Fact[] m_facts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.eval("(deftemplate item (slot id) (slot bucket))");
+        m_engine.eval("(deftemplate bucket (slot n))");
+        for (int i = 0; i < ruleCount; i++)
+            m_engine.eval("(defrule in-bucket-" + i + " (item (id ?id) (bucket ?b&" + i + ")) (bucket (n ?b)) => )");
+        m_engine.reset();
+        for (int i = 0; i < ruleCount; i++)
+            m_engine.assertFact(Workloads.fact(m_engine, "bucket", new String[] {"n"},
+                                               new Object[] {new Integer(i)}));
+        m_facts = new Fact[factCount];
+    }
+
+    @Benchmark
+    public int assertThenRetract() throws JessException {
+        Rete engine = m_engine;
+        String[] slots = {"id", "bucket"};
+        for (int i = 0; i < factCount; i++)
+            m_facts[i] = engine.assertFact(Workloads.fact(engine, "item", slots,
+                    new Object[] {new Integer(i), new Integer(i % Math.max(1, ruleCount))}));
+        for (int i = 0; i < factCount; i++)
+            engine.retract(m_facts[i]);
+        return factCount;
+    }
+}
@@ -0,0 +1,75 @@
+package jess.bench;
+
+import jess.*;
+import jess.factory.ArrayFactoryImpl;
+import jess.factory.Factory;
+import jess.factory.FactoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rules with many patterns: each rule chains eight patterns together on
+ * an ordering test, so partial matches grow long and numerous. Runs with
+ * both token factories, since this is the workload array-backed tokens
+ * are meant for.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeepJoinBenchmark {
+    private static final int DEPTH = 8;
+
+    /** The number of facts per pattern. */
+    @Param({"4", "8", "12"})
+    public int factCount;
+
+    /** The number of chain rules; each requires a different minimum step. */
+    @Param({"1", "4"})
+    public int ruleCount;
+
+    @Param({"FactoryImpl", "ArrayFactoryImpl"})
+    public String factory;
+
+    private Rete m_engine;
+    private Factory m_oldFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_oldFactory = Rete.getFactory();
+        Rete.setFactory(factory.equals("ArrayFactoryImpl") ? (Factory) new ArrayFactoryImpl(DEPTH) : new FactoryImpl());
+
+        m_engine = Workloads.newEngine();
+        m_engine.eval("(deftemplate p (slot a) (slot b))");
+        for (int r = 0; r < ruleCount; r++) {
+            StringBuffer sb = new StringBuffer("(defrule chain-" + r + " (p (a 0) (b ?b0))");
+            for (int i = 1; i < DEPTH; i++)
+                sb.append(" (p (a ").append(i).append(") (b ?b").append(i).append("&:(>= ?b").append(i)
+                  .append(" (+ ?b").append(i - 1).append(' ').append(r).append("))))");
+            sb.append(" => )");
+            m_engine.eval(sb.toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Rete.setFactory(m_oldFactory);
+    }
+
+    @Benchmark
+    public int matchChains() throws JessException {
+        Rete engine = m_engine;
+        engine.reset();
+        String[] slots = {"a", "b"};
+        for (int i = 0; i < DEPTH; i++)
+            for (int j = 0; j < factCount; j++)
+                engine.assertFact(Workloads.fact(engine, "p", slots, new Object[] {new Integer(i), new Integer(j)}));
+        return engine.run();
+    }
+}
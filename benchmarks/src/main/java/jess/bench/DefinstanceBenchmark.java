@@ -0,0 +1,86 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A definstance update storm: every dynamic definstance fires a
+ * property change, which Jess turns into a modify of its shadow fact,
+ * and then the rules run.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefinstanceBenchmark {
+
+    /** The number of definstanced beans. */
+    @Param({"100", "1000"})
+    public int factCount;
+
+    /** The number of rules; each watches one band of readings. */
+    @Param({"1", "10"})
+    public int ruleCount;
+
+    private Rete m_engine;
+    private Sensor[] m_sensors;
+    private int m_round;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.defclass("sensor", Sensor.class.getName(), null);
+        for (int r = 0; r < ruleCount; r++)
+            m_engine.eval("(defrule band-" + r + " (sensor (reading ?v&:(= (mod ?v " + ruleCount + ") " + r + "))) => )");
+        m_engine.reset();
+
+        m_sensors = new Sensor[factCount];
+        for (int i = 0; i < factCount; i++) {
+            m_sensors[i] = new Sensor();
+            m_engine.definstance("sensor", m_sensors[i], true);
+        }
+    }
+
+    @Benchmark
+    public int updateAll() throws JessException {
+        int round = ++m_round;
+        for (int i = 0; i < factCount; i++)
+            m_sensors[i].setReading(i + round);
+        return m_engine.run();
+    }
+
+    /**
+     * A JavaBean that reports changes to its one property.
+     */
+    public static class Sensor {
+        private final PropertyChangeSupport m_pcs = new PropertyChangeSupport(this);
+        private int m_reading;
+
+        public int getReading() {
+            return m_reading;
+        }
+
+        public void setReading(int reading) {
+            int old = m_reading;
+            m_reading = reading;
+            m_pcs.firePropertyChange("reading", old, reading);
+        }
+
+        public void addPropertyChangeListener(PropertyChangeListener l) {
+            m_pcs.addPropertyChangeListener(l);
+        }
+
+        public void removePropertyChangeListener(PropertyChangeListener l) {
+            m_pcs.removePropertyChangeListener(l);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Miss Manners: a depth-first search driven by a state fact, dominated
+ * by <tt>not</tt> joins and by modifies of the context fact. Guests
+ * alternate in sex and each has two of three hobbies, so every problem
+ * size has a solution.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MannersBenchmark {
+
+    /** The number of guests. */
+    @Param({"16", "32", "64"})
+    public int factCount;
+
+    /** The number of rules that never activate, added to the eight Manners rules. */
+    @Param({"0", "100"})
+    public int ruleCount;
+
+    private Rete m_engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.batch("jess/bench/manners.clp");
+        Workloads.addDecoyRules(m_engine, "guest", "hobby", ruleCount);
+    }
+
+    @Benchmark
+    public int seatGuests() throws JessException {
+        Rete engine = m_engine;
+        engine.reset();
+        String[] slots = {"name", "sex", "hobby"};
+        for (int i = 0; i < factCount; i++) {
+            String name = "g" + i;
+            String sex = (i % 2 == 0) ? "m" : "f";
+            engine.assertFact(Workloads.fact(engine, "guest", slots,
+                                             new Object[] {name, sex, "h" + (i % 3)}));
+            engine.assertFact(Workloads.fact(engine, "guest", slots,
+                                             new Object[] {name, sex, "h" + ((i + 1) % 3)}));
+        }
+        engine.assertFact(Workloads.fact(engine, "last_seat", new String[] {"seat"},
+                                         new Object[] {new Integer(factCount)}));
+        engine.assertFact(Workloads.fact(engine, "count", new String[] {"c"},
+                                         new Object[] {new Integer(1)}));
+        engine.assertFact(Workloads.fact(engine, "context", new String[] {"state"},
+                                         new Object[] {"start"}));
+        return engine.run();
+    }
+}
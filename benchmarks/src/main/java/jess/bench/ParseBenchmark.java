@@ -0,0 +1,71 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parser: evaluating expressions given as strings with
+ * {@link Rete#eval(String)}, and parsing a file's worth of rules with
+ * {@link Jesp}. Redefining a rule replaces it, so the rule base stays the
+ * same size from one operation to the next.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** The number of expressions evaluated by {@link #evalExpressions}. */
+    @Param({"10", "100"})
+    public int factCount;
+
+    /** The number of rules parsed by {@link #parseRules}. */
+    @Param({"10", "100"})
+    public int ruleCount;
+
+    private Rete m_engine;
+    private String[] m_expressions;
+    private String m_rules;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.eval("(deftemplate order (slot id) (slot customer) (slot total))");
+        m_engine.eval("(deftemplate customer (slot id) (slot credit))");
+
+        m_expressions = new String[factCount];
+        for (int i = 0; i < factCount; i++)
+            m_expressions[i] = "(if (> (+ " + i + " (* 2 3)) (- 10 (/ 8 2))) then (str-cat \"x\" " + i + ") else nil)";
+
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < ruleCount; i++)
+            sb.append("(defrule check-credit-").append(i)
+              .append(" \"Orders over a customer's credit are held\"")
+              .append(" ?o <- (order (id ?id) (customer ?c) (total ?t&:(> ?t ").append(i).append(")))")
+              .append(" (customer (id ?c) (credit ?cr&:(< ?cr ?t)))")
+              .append(" (not (order (customer ?c) (total 0)))")
+              .append(" => (modify ?o (total 0)) (printout t \"hold \" ?id crlf))\n");
+        m_rules = sb.toString();
+    }
+
+    @Benchmark
+    public Value evalExpressions() throws JessException {
+        Value result = null;
+        for (int i = 0; i < m_expressions.length; i++)
+            result = m_engine.eval(m_expressions[i]);
+        return result;
+    }
+
+    @Benchmark
+    public Value parseRules() throws JessException {
+        return new Jesp(new StringReader(m_rules), m_engine).parse(false);
+    }
+}
@@ -0,0 +1,74 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polling working memory with queries: each operation changes one order
+ * and then runs every query with {@link Rete#runQueryStar}, reading all
+ * the results, the way an application polls for state it displays.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryPollingBenchmark {
+    private static final int CUSTOMERS = 50;
+
+    /** The number of orders in working memory. */
+    @Param({"1000", "10000"})
+    public int factCount;
+
+    /** The number of queries polled per operation. */
+    @Param({"1", "10"})
+    public int ruleCount;
+
+    private Rete m_engine;
+    private Fact[] m_orders;
+    private ValueVector[] m_params;
+    private int m_next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.eval("(deftemplate order (slot id) (slot customer) (slot status))");
+        for (int q = 0; q < ruleCount; q++)
+            m_engine.eval("(defquery orders-" + q + " (declare (variables ?c))" +
+                          " (order (id ?id) (customer ?c) (status " + q + ")))");
+        m_engine.reset();
+
+        m_orders = new Fact[factCount];
+        String[] slots = {"id", "customer", "status"};
+        for (int i = 0; i < factCount; i++)
+            m_orders[i] = m_engine.assertFact(Workloads.fact(m_engine, "order", slots,
+                    new Object[] {new Integer(i), new Integer(i % CUSTOMERS), new Integer(i % ruleCount)}));
+
+        m_params = new ValueVector[CUSTOMERS];
+        for (int c = 0; c < CUSTOMERS; c++)
+            m_params[c] = new ValueVector().add(c);
+    }
+
+    @Benchmark
+    public int poll() throws JessException {
+        Rete engine = m_engine;
+        int i = m_next++ % factCount;
+        engine.modify(m_orders[i], "status", new Value((i + m_next) % ruleCount, RU.INTEGER));
+
+        int rows = 0;
+        ValueVector params = m_params[i % CUSTOMERS];
+        for (int q = 0; q < ruleCount; q++) {
+            QueryResult result = engine.runQueryStar("orders-" + q, params);
+            while (result.next())
+                rows += result.getInt("id");
+            result.close();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,47 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine startup: constructing a Rete, which loads the script library,
+ * and then defining a handful of rules, as a server that creates an
+ * engine per request does.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+
+    /** The number of facts asserted into the new engine. */
+    @Param({"0", "100"})
+    public int factCount;
+
+    /** The number of rules defined in the new engine. */
+    @Param({"0", "10"})
+    public int ruleCount;
+
+    @Benchmark
+    public Rete newEngine() throws JessException {
+        Rete engine = new Rete();
+        if (ruleCount > 0 || factCount > 0) {
+            engine.eval("(deftemplate item (slot id) (slot kind))");
+            for (int i = 0; i < ruleCount; i++)
+                engine.eval("(defrule kind-" + i + " (item (id ?id) (kind " + i + ")) => )");
+            engine.reset();
+            String[] slots = {"id", "kind"};
+            for (int i = 0; i < factCount; i++)
+                engine.assertFact(Workloads.fact(engine, "item", slots,
+                        new Object[] {new Integer(i), new Integer(i % Math.max(1, ruleCount))}));
+        }
+        return engine;
+    }
+}
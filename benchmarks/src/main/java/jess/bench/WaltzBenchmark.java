@@ -0,0 +1,70 @@
+package jess.bench;
+
+import jess.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cut-down Waltz line-labelling run over a row of cubes seen
+ * corner-on: each cube is a hexagonal outline with three inner edges,
+ * giving one fork, three arrows and three L junctions to find, classify
+ * and label. Exercises three-way self-joins and long chains of modifies.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaltzBenchmark {
+
+    /** The number of cubes in the drawing; each has nine lines. */
+    @Param({"10", "50"})
+    public int factCount;
+
+    /** The number of rules that never activate, added to the Waltz rules. */
+    @Param({"0", "100"})
+    public int ruleCount;
+
+    // The outline of a cube centred at the origin, anticlockwise from the top
+    private static final int[][] HEXAGON = {{0, 10}, {-9, 5}, {-9, -5}, {0, -10}, {9, -5}, {9, 5}};
+
+    private Rete m_engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JessException {
+        m_engine = Workloads.newEngine();
+        m_engine.batch("jess/bench/waltz.clp");
+        Workloads.addDecoyRules(m_engine, "edge", "label", ruleCount);
+    }
+
+    @Benchmark
+    public int labelDrawing() throws JessException {
+        Rete engine = m_engine;
+        engine.reset();
+        String[] slots = {"p1", "p2"};
+        for (int cube = 0; cube < factCount; cube++) {
+            int cx = 30 * cube + 20, cy = 20;
+            int center = point(cx, cy);
+            for (int i = 0; i < HEXAGON.length; i++) {
+                int[] from = HEXAGON[i], to = HEXAGON[(i + 1) % HEXAGON.length];
+                int p1 = point(cx + from[0], cy + from[1]);
+                engine.assertFact(Workloads.fact(engine, "line", slots,
+                        new Object[] {new Integer(p1), new Integer(point(cx + to[0], cy + to[1]))}));
+                if (i % 2 == 0)
+                    engine.assertFact(Workloads.fact(engine, "line", slots,
+                            new Object[] {new Integer(center), new Integer(p1)}));
+            }
+        }
+        engine.assertFact(Workloads.fact(engine, "stage", new String[] {"value"}, new Object[] {"duplicate"}));
+        return engine.run();
+    }
+
+    private static int point(int x, int y) {
+        return x * 1000 + y;
+    }
+}
@@ -0,0 +1,64 @@
+package jess.bench;
+
+import jess.*;
+
+import java.io.Writer;
+
+/**
+ * Helpers shared by the benchmarks.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+final class Workloads {
+    private Workloads() {}
+
+    /**
+     * Returns a new engine whose standard output router discards everything.
+     */
+    static Rete newEngine() throws JessException {
+        Rete engine = new Rete();
+        Writer sink = new Writer() {
+            public void write(char[] cbuf, int off, int len) {}
+            public void flush() {}
+            public void close() {}
+        };
+        engine.addOutputRouter("t", sink);
+        engine.addOutputRouter("WSTDOUT", sink);
+        engine.addOutputRouter("WSTDERR", sink);
+        return engine;
+    }
+
+    /**
+     * Defines <tt>count</tt> rules that test the given slot of the given
+     * template against a constant no fact will have. They never activate,
+     * but each adds a pattern that every fact of the template is tested
+     * against, so they measure how matching scales with the size of the
+     * rule base.
+     */
+    static void addDecoyRules(Rete engine, String template, String slot, int count) throws JessException {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            sb.append("(defrule decoy-").append(template).append('-').append(i);
+            sb.append(" (").append(template).append(" (").append(slot).append(" decoy-").append(i).append(")) => )\n");
+        }
+        if (sb.length() > 0)
+            new Jesp(new java.io.StringReader(sb.toString()), engine).parse(false);
+    }
+
+    static Fact fact(Rete engine, String template, String[] slots, Object[] values) throws JessException {
+        Fact f = new Fact(template, engine);
+        for (int i = 0; i < slots.length; i++)
+            f.setSlotValue(slots[i], value(values[i]));
+        return f;
+    }
+
+    static Value value(Object o) throws JessException {
+        if (o instanceof Integer)
+            return new Value(((Integer) o).intValue(), RU.INTEGER);
+        else if (o instanceof Double)
+            return new Value(((Double) o).doubleValue(), RU.FLOAT);
+        else
+            return new Value(o.toString(), RU.SYMBOL);
+    }
+}
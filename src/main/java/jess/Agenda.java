@@ -133,6 +133,12 @@ class Agenda implements Serializable {
         return getQueue(engine, moduleName).iterator(engine);
     }
 
+    int getActivationCount(Rete engine, String moduleName) throws JessException {
+        synchronized (m_activationSemaphore) {
+            return getQueue(engine, moduleName).size();
+        }
+    }
+
     private HashSet<Activation> m_toAdd = new HashSet<Activation>();
     private HashSet<Activation> m_toRemove = new HashSet<Activation>();
 
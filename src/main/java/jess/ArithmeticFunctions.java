@@ -10,7 +10,7 @@ import java.util.HashMap;
  */
 
 class ArithmeticFunctions extends IntrinsicPackageImpl {
-    final static Value ONE = new Value(1);
+    final static Value ONE = ValueFactory.integer(1);
 
     public void add(HashMap map) {
         addFunction(new Eq(), map);
@@ -30,6 +30,40 @@ class ArithmeticFunctions extends IntrinsicPackageImpl {
         addFunction(new PlusPlus(), map);
         addFunction(new MinusMinus(), map);
     }
+
+    /**
+     * Resolve an argument, skipping the work for numeric literals, which
+     * are always their own values, and for variables bound to numbers,
+     * like the slot values a rule's left-hand side binds.
+     */
+    static Value resolve(Value v, Context context) throws JessException {
+        switch (v.type()) {
+            case RU.INTEGER:
+            case RU.FLOAT:
+            case RU.LONG:
+                return v;
+            case RU.VARIABLE:
+                if (!(v instanceof DottedVariable)) {
+                    Value bound = context.findValue(v.variableValue(context));
+                    if (bound != null && isNumber(bound))
+                        return bound;
+                }
+                return v.resolveValue(context);
+            default:
+                return v.resolveValue(context);
+        }
+    }
+
+    private static boolean isNumber(Value v) {
+        switch (v.type()) {
+            case RU.INTEGER:
+            case RU.FLOAT:
+            case RU.LONG:
+                return true;
+            default:
+                return false;
+        }
+    }
 }
 
 class Eq implements Userfunction, Serializable {
@@ -267,12 +301,12 @@ class Mod implements Userfunction, Serializable {
 
     public Value call(ValueVector vv, Context context)
             throws JessException {
-        Value v1 = vv.get(1).resolveValue(context);
-        Value v2 = vv.get(2).resolveValue(context);
+        Value v1 = ArithmeticFunctions.resolve(vv.get(1), context);
+        Value v2 = ArithmeticFunctions.resolve(vv.get(2), context);
         if (v1.type() == RU.LONG || v2.type() == RU.LONG) {
-            return new LongValue(v1.longValue(null) % v2.longValue(null));
+            return ValueFactory.longInteger(v1.longValue(null) % v2.longValue(null));
         } else {
-            return new Value(v1.intValue(null) % v2.intValue(null), RU.INTEGER);
+            return ValueFactory.integer(v1.intValue(null) % v2.intValue(null));
         }
     }
 }
@@ -285,11 +319,27 @@ class Plus implements Userfunction, Serializable {
 
     public Value call(ValueVector vv, Context context)
             throws JessException {
-        Value result = vv.get(1).resolveValue(context);
+        Value result = ArithmeticFunctions.resolve(vv.get(1), context);
+        if (vv.size() == 3) {
+            Value v2 = ArithmeticFunctions.resolve(vv.get(2), context);
+            switch (result.type() | v2.type()) {
+                case RU.INTEGER:
+                    return ValueFactory.integer(result.intValue(null) + v2.intValue(null));
+                case RU.LONG:
+                case RU.LONG | RU.INTEGER:
+                    return ValueFactory.longInteger(result.longValue(null) + v2.longValue(null));
+                case RU.FLOAT:
+                case RU.FLOAT | RU.INTEGER:
+                    return ValueFactory.floating(result.numericValue(null) + v2.numericValue(null));
+            }
+            if (!result.isNumeric(context))
+                throw new JessException("+", "Not a number:", result.toString());
+            return compute(result, v2);
+        }
         if (!result.isNumeric(context))
             throw new JessException("+", "Not a number:", result.toString());
         for (int i = 2; i < vv.size(); ++i) {
-            result = compute(result, vv.get(i).resolveValue(context));
+            result = compute(result, ArithmeticFunctions.resolve(vv.get(i), context));
         }
         return result;
     }
@@ -300,13 +350,13 @@ class Plus implements Userfunction, Serializable {
         switch (v1.type() + v2.type()) {
             case RU.LONG + RU.INTEGER:
             case RU.LONG + RU.LONG:
-                return new LongValue(v1.longValue(null) + v2.longValue(null));
+                return ValueFactory.longInteger(v1.longValue(null) + v2.longValue(null));
 
             case RU.INTEGER + RU.INTEGER:
-                return new Value(v1.intValue(null) + v2.intValue(null), RU.INTEGER);
+                return ValueFactory.integer(v1.intValue(null) + v2.intValue(null));
 
             default:
-                return new Value(v1.numericValue(null) + v2.numericValue(null), RU.FLOAT);
+                return ValueFactory.floating(v1.numericValue(null) + v2.numericValue(null));
         }
     }
 }
@@ -319,11 +369,27 @@ class Times implements Userfunction, Serializable {
 
     public Value call(ValueVector vv, Context context)
             throws JessException {
-        Value result = vv.get(1).resolveValue(context);
+        Value result = ArithmeticFunctions.resolve(vv.get(1), context);
+        if (vv.size() == 3) {
+            Value v2 = ArithmeticFunctions.resolve(vv.get(2), context);
+            switch (result.type() | v2.type()) {
+                case RU.INTEGER:
+                    return ValueFactory.integer(result.intValue(null) * v2.intValue(null));
+                case RU.LONG:
+                case RU.LONG | RU.INTEGER:
+                    return ValueFactory.longInteger(result.longValue(null) * v2.longValue(null));
+                case RU.FLOAT:
+                case RU.FLOAT | RU.INTEGER:
+                    return ValueFactory.floating(result.numericValue(null) * v2.numericValue(null));
+            }
+            if (!result.isNumeric(context))
+                throw new JessException("*", "Not a number:", result.toString());
+            return compute(result, v2);
+        }
         if (!result.isNumeric(context))
             throw new JessException("*", "Not a number:", result.toString());
         for (int i = 2; i < vv.size(); ++i) {
-            result = compute(result, vv.get(i).resolveValue(context));
+            result = compute(result, ArithmeticFunctions.resolve(vv.get(i), context));
         }
         return result;
     }
@@ -335,13 +401,13 @@ class Times implements Userfunction, Serializable {
 
             case RU.LONG + RU.INTEGER:
             case RU.LONG + RU.LONG:
-                return new LongValue(v1.longValue(null) * v2.longValue(null));
+                return ValueFactory.longInteger(v1.longValue(null) * v2.longValue(null));
 
             case RU.INTEGER + RU.INTEGER:
-                return new Value(v1.intValue(null) * v2.intValue(null), RU.INTEGER);
+                return ValueFactory.integer(v1.intValue(null) * v2.intValue(null));
 
             default:
-                return new Value(v1.numericValue(null) * v2.numericValue(null), RU.FLOAT);
+                return ValueFactory.floating(v1.numericValue(null) * v2.numericValue(null));
         }
     }
 }
@@ -353,11 +419,27 @@ class Minus implements Userfunction, Serializable {
 
     public Value call(ValueVector vv, Context context)
             throws JessException {
-        Value result = vv.get(1).resolveValue(context);
+        Value result = ArithmeticFunctions.resolve(vv.get(1), context);
+        if (vv.size() == 3) {
+            Value v2 = ArithmeticFunctions.resolve(vv.get(2), context);
+            switch (result.type() | v2.type()) {
+                case RU.INTEGER:
+                    return ValueFactory.integer(result.intValue(null) - v2.intValue(null));
+                case RU.LONG:
+                case RU.LONG | RU.INTEGER:
+                    return ValueFactory.longInteger(result.longValue(null) - v2.longValue(null));
+                case RU.FLOAT:
+                case RU.FLOAT | RU.INTEGER:
+                    return ValueFactory.floating(result.numericValue(null) - v2.numericValue(null));
+            }
+            if (!result.isNumeric(context))
+                throw new JessException("-", "Not a number:", result.toString());
+            return compute(result, v2);
+        }
         if (!result.isNumeric(context))
             throw new JessException("-", "Not a number:", result.toString());
         for (int i = 2; i < vv.size(); ++i) {
-            result = compute(result, vv.get(i).resolveValue(context));
+            result = compute(result, ArithmeticFunctions.resolve(vv.get(i), context));
         }
         return result;
     }
@@ -369,13 +451,13 @@ class Minus implements Userfunction, Serializable {
 
             case RU.LONG + RU.INTEGER:
             case RU.LONG + RU.LONG:
-                return new LongValue(v1.longValue(null) - v2.longValue(null));
+                return ValueFactory.longInteger(v1.longValue(null) - v2.longValue(null));
 
             case RU.INTEGER + RU.INTEGER:
-                return new Value(v1.intValue(null) - v2.intValue(null), RU.INTEGER);
+                return ValueFactory.integer(v1.intValue(null) - v2.intValue(null));
 
             default:
-                return new Value(v1.numericValue(null) - v2.numericValue(null), RU.FLOAT);
+                return ValueFactory.floating(v1.numericValue(null) - v2.numericValue(null));
         }
     }
 }
@@ -388,12 +470,12 @@ class Divide implements Userfunction, Serializable {
 
     public Value call(ValueVector vv, Context context)
             throws JessException {
-        double quotient = vv.get(1).numericValue(context);
+        double quotient = ArithmeticFunctions.resolve(vv.get(1), context).numericValue(context);
         int size = vv.size();
         for (int i = 2; i < size; i++) {
-            quotient /= vv.get(i).numericValue(context);
+            quotient /= ArithmeticFunctions.resolve(vv.get(i), context).numericValue(context);
         }
-        return new Value(quotient, RU.FLOAT);
+        return ValueFactory.floating(quotient);
     }
 }
 
@@ -408,7 +490,10 @@ class PlusPlus implements Userfunction, Serializable {
         Value var = vv.get(1);
         if (var.type() != RU.VARIABLE)
             throw new JessException("++", "Not a variable", var.toString());
-        Value result = Plus.compute(var.resolveValue(context), ArithmeticFunctions.ONE);
+        Value value = ArithmeticFunctions.resolve(var, context);
+        Value result = value.type() == RU.INTEGER ?
+                ValueFactory.integer(value.intValue(null) + 1) :
+                Plus.compute(value, ArithmeticFunctions.ONE);
         context.setVariable(var.variableValue(context), result);
         return result;
     }
@@ -425,7 +510,10 @@ class MinusMinus implements Userfunction, Serializable {
         Value var = vv.get(1);
         if (var.type() != RU.VARIABLE)
             throw new JessException("--", "Not a variable", var.toString());
-        Value result = Minus.compute(var.resolveValue(context), ArithmeticFunctions.ONE);
+        Value value = ArithmeticFunctions.resolve(var, context);
+        Value result = value.type() == RU.INTEGER ?
+                ValueFactory.integer(value.intValue(null) - 1) :
+                Minus.compute(value, ArithmeticFunctions.ONE);
         context.setVariable(var.variableValue(context), result);
         return result;
     }
@@ -0,0 +1,300 @@
+package jess;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An output router that hands text off to a dedicated thread. Writes
+ * go into a bounded ring buffer without taking a lock; the drain thread
+ * copies them to the underlying Writer and flushes it when enough text
+ * has accumulated, or when text has been waiting longer than the flush
+ * interval. Calling {@link #flush} never blocks -- it just wakes the drain
+ * thread -- so {@link Rete#addOutputRouter installing} one of these in
+ * place of a console or file router takes the flush out of every
+ * <tt>printout</tt> call. Use {@link #sync} to wait until everything
+ * written so far has reached the underlying Writer.
+ * <p/>
+ * When the buffer is full, the back-pressure policy decides what happens:
+ * the writer can wait for room ({@link #BLOCK}), discard the text
+ * ({@link #DROP}), or throw an IOException ({@link #FAIL}).
+ * <p/>
+ * Pending output is drained when the JVM exits normally.
+ * <pre>
+ * engine.addOutputRouter("t", new AsyncWriter(new PrintWriter(System.out)));
+ * </pre>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public class AsyncWriter extends Writer {
+    /** Back-pressure policy: wait for room in the buffer. */
+    public static final int BLOCK = 0;
+    /** Back-pressure policy: discard text that doesn't fit. */
+    public static final int DROP = 1;
+    /** Back-pressure policy: throw an IOException. */
+    public static final int FAIL = 2;
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_FLUSH_SIZE = 8192;
+    public static final long DEFAULT_FLUSH_INTERVAL = 50;
+
+    private static final Set<AsyncWriter> s_open = Collections.synchronizedSet(new HashSet<AsyncWriter>());
+
+    static {
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread("AsyncWriter shutdown") {
+                public void run() {
+                    AsyncWriter[] writers;
+                    synchronized (s_open) {
+                        writers = s_open.toArray(new AsyncWriter[s_open.size()]);
+                    }
+                    for (int i = 0; i < writers.length; i++) {
+                        try {
+                            writers[i].sync();
+                        } catch (IOException silentlyIgnore) {
+                            // Nothing to report it to
+                        }
+                    }
+                }
+            });
+        } catch (SecurityException silentlyIgnore) {
+            // Pending output may be lost at exit
+        }
+    }
+
+    private final Writer m_sink;
+    private final int m_mask;
+    private final AtomicReferenceArray<String> m_slots;
+    private final AtomicLongArray m_sequences;
+    private final AtomicLong m_tail = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private final int m_flushSize;
+    private final long m_flushInterval;
+    private final int m_policy;
+    private final Thread m_drainer;
+
+    // Written only by the drain thread
+    private long m_head;
+    private volatile long m_written;
+    private volatile IOException m_error;
+    private volatile boolean m_closed;
+
+    /**
+     * Create an AsyncWriter with the default buffer size, flush thresholds,
+     * and the BLOCK policy.
+     * @param sink the Writer to send output to
+     */
+    public AsyncWriter(Writer sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_FLUSH_SIZE, DEFAULT_FLUSH_INTERVAL, BLOCK);
+    }
+
+    /**
+     * Create an AsyncWriter.
+     * @param sink the Writer to send output to
+     * @param capacity the number of writes the buffer can hold; rounded up to a power of two
+     * @param flushSize flush the sink once this many characters have been written to it
+     * @param flushInterval flush the sink once written text has waited this many milliseconds
+     * @param policy what to do when the buffer is full: BLOCK, DROP, or FAIL
+     */
+    public AsyncWriter(Writer sink, int capacity, int flushSize, long flushInterval, int policy) {
+        if (policy < BLOCK || policy > FAIL)
+            throw new IllegalArgumentException("Bad policy: " + policy);
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        m_sink = sink;
+        m_mask = size - 1;
+        m_slots = new AtomicReferenceArray<String>(size);
+        m_sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            m_sequences.set(i, i);
+        m_flushSize = Math.max(1, flushSize);
+        m_flushInterval = Math.max(1, flushInterval);
+        m_policy = policy;
+        m_drainer = new Thread(new Drainer(), "AsyncWriter");
+        m_drainer.setDaemon(true);
+        m_drainer.start();
+        s_open.add(this);
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len > 0)
+            enqueue(new String(cbuf, off, len));
+    }
+
+    public void write(String str) throws IOException {
+        if (str.length() > 0)
+            enqueue(str);
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        if (len > 0)
+            enqueue(str.substring(off, off + len));
+    }
+
+    public void write(int c) throws IOException {
+        enqueue(String.valueOf((char) c));
+    }
+
+    /**
+     * Ask the drain thread to write out and flush what it has. Doesn't wait.
+     */
+    public void flush() throws IOException {
+        checkError();
+        LockSupport.unpark(m_drainer);
+    }
+
+    /**
+     * Wait until everything written so far has been written to the
+     * underlying Writer, and flush it.
+     * @throws IOException if the underlying Writer failed
+     */
+    public void sync() throws IOException {
+        long target = m_tail.get();
+        while (m_written < target && m_drainer.isAlive()) {
+            LockSupport.unpark(m_drainer);
+            LockSupport.parkNanos(100000L);
+        }
+        synchronized (m_sink) {
+            m_sink.flush();
+        }
+        checkError();
+    }
+
+    /**
+     * Drain the buffer, stop the drain thread, and close the underlying
+     * Writer.
+     */
+    public void close() throws IOException {
+        if (m_closed)
+            return;
+        sync();
+        m_closed = true;
+        s_open.remove(this);
+        LockSupport.unpark(m_drainer);
+        try {
+            m_drainer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (m_sink) {
+            m_sink.close();
+        }
+    }
+
+    /**
+     * Returns the number of writes discarded under the DROP policy.
+     * @return the number of discarded writes
+     */
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    private void enqueue(String text) throws IOException {
+        checkError();
+        if (m_closed)
+            throw new IOException("AsyncWriter is closed");
+
+        for (int spins = 0; ; ++spins) {
+            long tail = m_tail.get();
+            int index = (int) tail & m_mask;
+            long sequence = m_sequences.get(index);
+            if (sequence == tail) {
+                if (m_tail.compareAndSet(tail, tail + 1)) {
+                    m_slots.set(index, text);
+                    m_sequences.set(index, tail + 1);
+                    return;
+                }
+            } else if (sequence < tail) {
+                // Full
+                switch (m_policy) {
+                    case DROP:
+                        m_dropped.incrementAndGet();
+                        return;
+                    case FAIL:
+                        throw new IOException("AsyncWriter buffer is full");
+                    default:
+                        LockSupport.unpark(m_drainer);
+                        if (spins > 100)
+                            LockSupport.parkNanos(10000L);
+                        else
+                            Thread.yield();
+                        checkError();
+                }
+            }
+        }
+    }
+
+    private void checkError() throws IOException {
+        IOException error = m_error;
+        if (error != null)
+            throw error;
+    }
+
+    private class Drainer implements Runnable {
+        public void run() {
+            long intervalNanos = m_flushInterval * 1000000L;
+            long unflushed = 0;
+            long oldestUnflushed = 0;
+            try {
+                while (true) {
+                    int index = (int) m_head & m_mask;
+                    if (m_sequences.get(index) == m_head + 1) {
+                        String text = m_slots.get(index);
+                        m_slots.set(index, null);
+                        m_sequences.set(index, m_head + m_mask + 1);
+                        ++m_head;
+                        synchronized (m_sink) {
+                            m_sink.write(text);
+                        }
+                        if (unflushed == 0)
+                            oldestUnflushed = System.nanoTime();
+                        unflushed += text.length();
+                        if (unflushed >= m_flushSize) {
+                            flushSink();
+                            unflushed = 0;
+                        }
+                        m_written = m_head;
+                        continue;
+                    }
+
+                    if (m_closed && m_head == m_tail.get()) {
+                        flushSink();
+                        return;
+                    }
+
+                    if (unflushed > 0) {
+                        long wait = intervalNanos - (System.nanoTime() - oldestUnflushed);
+                        if (wait <= 0) {
+                            flushSink();
+                            unflushed = 0;
+                        } else {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else if (m_head == m_tail.get()) {
+                        LockSupport.parkNanos(intervalNanos);
+                    } else {
+                        // A writer has claimed the slot but not filled it yet
+                        Thread.yield();
+                    }
+                }
+            } catch (IOException ioe) {
+                m_error = ioe;
+            } finally {
+                s_open.remove(AsyncWriter.this);
+            }
+        }
+
+        private void flushSink() throws IOException {
+            synchronized (m_sink) {
+                m_sink.flush();
+            }
+        }
+    }
+}
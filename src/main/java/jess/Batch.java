@@ -126,7 +126,7 @@ public class Batch implements Userfunction, Serializable {
                 parseXMLDocument(engine, fis, handler);
                 v = Funcall.TRUE;
             } else {
-                Jesp j = new Jesp(fis, engine);
+                Jesp j = new Jesp(openTokenizer(engine, filename, charset, fis), engine);
                 j.setFileName(filename);
                 while (true) {
                     try {
@@ -200,7 +200,7 @@ public class Batch implements Userfunction, Serializable {
 
 
     // Ugh. No other way to do this on JDK 1.4, I'm afraid.
-    private static String defaultCharset() {
+    static String defaultCharset() {
         synchronized ("JESS_FIND_CHARSET") {
             if (s_defaultCharset == null)
                 s_defaultCharset = new OutputStreamWriter(new ByteArrayOutputStream()).getEncoding();
@@ -248,6 +248,31 @@ public class Batch implements Userfunction, Serializable {
         return fis;
     }
 
+    /**
+     * Returns a fast Tokenizer for a file of Jess code that's already been
+     * opened with {@link #findDocument}. A file on the local file system is
+     * memory-mapped; anything else is read from the open Reader.
+     *
+     * @param engine   the active rule engine
+     * @param filename the path that was passed to findDocument
+     * @param charset  the name of the character set used in the file
+     * @param fis      the open Reader returned by findDocument
+     * @return a Tokenizer for the file's contents
+     */
+    static Tokenizer openTokenizer(Rete engine, String filename, String charset, Reader fis) {
+        if (engine.getDocumentBase() == null) {
+            File file = new File(filename);
+            if (file.isFile()) {
+                try {
+                    return BufferedTokenizer.forFile(file, charset, engine.getValueFactory());
+                } catch (IOException ioe) {
+                    // Fall back to the Reader
+                }
+            }
+        }
+        return new BufferedTokenizer(fis, engine.getValueFactory(), false);
+    }
+
     /**
      * Returns true if the first character of the file is a "&lt;", so that it's possible the file contains XML.
      * Such a file can't be Jess code.
@@ -0,0 +1,520 @@
+package jess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Tokenizer for bulk input -- files of code or facts -- that produces
+ * exactly the tokens a {@link ReaderTokenizer} would, but much faster.
+ * Input is read into a large character window rather than a character
+ * at a time through a PushbackReader; a local file is memory-mapped and
+ * decoded straight into the window. Atom text is assembled in a plain
+ * array and looked up in a small cache, so a symbol or number that
+ * appears over and over -- slot names, template names, enumerated values
+ * -- becomes a String only once, and symbols are interned in the
+ * engine's {@link ValueFactory} as they're first seen.
+ * <P>
+ * Reads block until the window can be filled, so this class isn't
+ * suitable for interactive input; use a ReaderTokenizer for that. It's
+ * not thread-safe.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ * @see Batch
+ */
+
+public class BufferedTokenizer implements Tokenizer {
+    private static final int EOF = -1;
+    private static final int WINDOW = 64 * 1024;
+    private static final int CACHE_SIZE = 4096;
+    private static final int MAX_CACHED_LENGTH = 64;
+
+    private final Reader m_reader;
+    private final ByteBuffer m_bytes;
+    private final CharsetDecoder m_decoder;
+    private boolean m_flushed;
+    private final ValueFactory m_factory;
+
+    private final char[] m_buf = new char[WINDOW];
+    private int m_pos, m_limit;
+    private boolean m_eof;
+
+    private char[] m_text = new char[64];
+    private int m_textLength;
+
+    private final String[] m_cache = new String[CACHE_SIZE];
+    private final boolean[] m_interned = new boolean[CACHE_SIZE];
+
+    private int m_line = 1;
+    private boolean m_reportNewlines = false;
+    private int m_streamIndex;
+    private int m_tokenStart;
+    private final boolean m_returnComments;
+
+    /**
+     * Tokenize the contents of a Reader.
+     * @param reader the source of characters
+     * @param factory symbols are interned here; may be null
+     * @param parseComments true if comments should be returned as tokens
+     */
+    public BufferedTokenizer(Reader reader, ValueFactory factory, boolean parseComments) {
+        m_reader = reader;
+        m_bytes = null;
+        m_decoder = null;
+        m_factory = factory;
+        m_returnComments = parseComments;
+    }
+
+    private BufferedTokenizer(ByteBuffer bytes, Charset charset, ValueFactory factory) {
+        m_reader = null;
+        m_bytes = bytes;
+        m_decoder = charset.newDecoder().
+                onMalformedInput(CodingErrorAction.REPLACE).
+                onUnmappableCharacter(CodingErrorAction.REPLACE);
+        m_factory = factory;
+        m_returnComments = false;
+    }
+
+    /**
+     * Tokenize a local file, which is memory-mapped rather than read.
+     * @param file the file
+     * @param charset the name of the file's character set
+     * @param factory symbols are interned here; may be null
+     * @return the new tokenizer
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public static BufferedTokenizer forFile(File file, String charset, ValueFactory factory) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // Too big to map in one piece
+                return new BufferedTokenizer(new java.io.InputStreamReader(new FileInputStream(file), charset),
+                                             factory, false);
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new BufferedTokenizer(bytes, Charset.forName(charset), factory);
+        } finally {
+            // The mapping stays valid after the channel is closed
+            stream.close();
+        }
+    }
+
+    public void reportNewlines(boolean b) {
+        m_reportNewlines = b;
+    }
+
+    public String readLine() throws JessException {
+        int c;
+        m_textLength = 0;
+        while ((c = nextChar()) != '\n' && c != EOF)
+            append(c);
+
+        if (m_reportNewlines && c == '\n')
+            unread(c);
+
+        if (c == EOF && m_textLength == 0)
+            return null;
+
+        ++m_line;
+        return text();
+    }
+
+    public JessToken nextToken() throws JessException {
+        m_textLength = 0;
+        int c;
+
+        // Eat any leading whitespace
+        m_tokenStart = m_streamIndex;
+        whiteloop:
+          do {
+              c = nextChar();
+
+              switch (c) {
+                  case EOF:
+                      return finishToken(EOF);
+
+                  case '\n':
+                      ++m_line;
+                      if (m_reportNewlines)
+                          return finishToken('\n');
+                      break;
+
+                  case ' ':
+                  case '\t':
+                  case '\r':
+                      break;
+
+                  default:
+                      unread(c);
+                      break whiteloop;
+              }
+          } while (c != EOF);
+        m_tokenStart = m_streamIndex;
+        c = nextChar();
+        switch (c) {
+            case EOF:
+                return finishToken(EOF);
+
+                // comment
+            case ';':
+                String line = discardToEOL();
+                if (m_returnComments) {
+                    JessToken tok = new JessToken(m_tokenStart, m_streamIndex);
+                    tok.m_ttype = JessToken.COMMENT_TOK;
+                    tok.m_sval = ";" + line;
+                    return tok;
+                } else
+                    return nextToken();
+
+                // quoted string
+            case '"':
+                readString('"');
+                return finishToken('"');
+
+                // Operator, comment, or regexp
+            case '/':
+                c = nextChar();
+                if (Character.isWhitespace((char) c) || c == ')') {
+                    unread(c);
+                    return finishToken('/');
+
+                } else if (c == '*') { // multiline comment
+                    do {
+                        readString('*');
+                        c = nextChar();
+                        if (c != '/') {
+                            append('*');
+                            unread(c);
+                        }
+                    } while (c != EOF && c != '/');
+                    append('/');
+                    return finishToken(JessToken.MULTILINE_COMMENT_TOK);
+
+                } else { // regexp
+                    unread(c);
+                    readString('/');
+                    return finishToken(JessToken.REGEXP_TOK);
+                }
+
+                // single-character tokens
+            case '(':
+            case ')':
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '~':
+                return finishToken(c);
+
+            case '&':
+            case '|':
+            case '=': {
+                int d = nextChar();
+                if (d == c) {
+                    append(c);
+                    append(c);
+                    return finishToken(0);
+                } else {
+                    unread(d);
+                    return finishToken(c);
+                }
+            }
+
+            default:
+                append(c);
+                break;
+        }
+
+        while (true) {
+            // Fast path: ordinary atom characters already in the window
+            char[] buf = m_buf;
+            int pos = m_pos, limit = m_limit;
+            while (pos < limit) {
+                char ch = buf[pos];
+                if (isSpecial(ch))
+                    break;
+                append(ch);
+                ++pos;
+            }
+            m_streamIndex += pos - m_pos;
+            m_pos = pos;
+
+            c = nextChar();
+            if (Character.isWhitespace((char) c)) {
+                unread(c);
+                return finishToken(0);
+            }
+
+            switch (c) {
+                case EOF:
+                    return finishToken(EOF);
+
+                    // separators
+                case '(':
+                case ')':
+                case '}':
+                case '{':
+                case '&':
+                case '~':
+                case '|':
+                case '<':
+                case ';':
+                case '"':
+                    unread(c);
+                    return finishToken(0);
+
+                    // character escape
+                case '\\':
+                    c = nextChar();
+                    if (c == EOF)
+                        return finishToken(EOF);
+                    else
+                        append(c);
+                    break;
+
+                default:
+                    append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * True for characters that end or alter an atom: the separators,
+     * the escape character, CR, and anything Java considers whitespace.
+     */
+    private static boolean isSpecial(char c) {
+        switch (c) {
+            case '(': case ')': case '{': case '}': case '&': case '~': case '|':
+            case '<': case ';': case '"': case '\\': case '\r':
+                return true;
+            default:
+                return c <= ' ' || (c > 127 && Character.isWhitespace(c));
+        }
+    }
+
+    public String discardToEOL() throws JessException {
+        StringBuffer line = new StringBuffer();
+        int c;
+        while (true) {
+            c = nextChar();
+            if (c == '\n' || c == EOF) {
+                ++m_line;
+                if (m_reportNewlines)
+                    unread(c);
+                break;
+            } else {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    public int getStreamPos() {
+        return m_streamIndex;
+    }
+
+    public void eatWhitespace() throws JessException {
+        int c;
+        while ((c = nextChar()) != EOF) {
+            if (!Character.isWhitespace((char) c)) {
+                unread(c);
+                break;
+            } else if (c == '\n')
+                ++m_line;
+        }
+    }
+
+    /**
+     * Returns the first character of the input without consuming it, or
+     * -1 if the input is empty.
+     * @return the next character
+     * @throws JessException if the input can't be read
+     */
+    public int peek() throws JessException {
+        if (m_pos == m_limit && !fill())
+            return EOF;
+        return m_buf[m_pos];
+    }
+
+    private void readString(char endChar) throws JessException {
+        int c;
+        loop:
+          do {
+              c = nextChar();
+              switch (c) {
+                  case EOF:
+                      break;
+                  case '\\':
+                      c = nextChar();
+                      append(c);
+                      break;
+
+                  case '\n':
+                      ++m_line;
+                      append(c);
+                      break;
+
+                  default:
+                      if (c == endChar)
+                          break loop;
+                      else
+                          append(c);
+                      break;
+              }
+          } while (c != EOF);
+    }
+
+    private JessToken finishToken(int c) throws JessException {
+        String text = null;
+        switch (c) {
+            case '"':
+            case JessToken.REGEXP_TOK:
+            case JessToken.MULTILINE_COMMENT_TOK:
+                text = text();
+                break;
+            case 0:
+            case EOF:
+                if (m_textLength > 0)
+                    return finishAtom();
+                break;
+        }
+        return ReaderTokenizer.finishToken(c, text, m_tokenStart, m_streamIndex, m_line);
+    }
+
+    /**
+     * Finish an atom, getting its text from the cache if it's there.
+     * A symbol is interned in the ValueFactory the first time it's cached,
+     * and the token carries the interned symbol's own String.
+     */
+    private JessToken finishAtom() throws JessException {
+        int length = m_textLength;
+        if (length > MAX_CACHED_LENGTH)
+            return ReaderTokenizer.finishToken(0, text(), m_tokenStart, m_streamIndex, m_line);
+
+        char[] chars = m_text;
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + chars[i];
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+
+        String cached = m_cache[slot];
+        boolean hit = cached != null && cached.length() == length;
+        for (int i = 0; hit && i < length; i++)
+            hit = cached.charAt(i) == chars[i];
+
+        if (!hit) {
+            cached = new String(chars, 0, length);
+            m_cache[slot] = cached;
+            m_interned[slot] = false;
+        }
+
+        JessToken token = ReaderTokenizer.finishToken(0, cached, m_tokenStart, m_streamIndex, m_line);
+        if (token.m_ttype == JessToken.SYMBOL_TOK && !m_interned[slot] && m_factory != null) {
+            cached = m_factory.get(cached, RU.SYMBOL).symbolValue(null);
+            m_cache[slot] = cached;
+            m_interned[slot] = true;
+            token.m_sval = cached;
+        }
+        return token;
+    }
+
+    private void append(int c) {
+        if (m_textLength == m_text.length) {
+            char[] text = new char[m_text.length * 2];
+            System.arraycopy(m_text, 0, text, 0, m_textLength);
+            m_text = text;
+        }
+        m_text[m_textLength++] = (char) c;
+    }
+
+    private String text() {
+        return new String(m_text, 0, m_textLength);
+    }
+
+    /**
+     * Returns the next character from the input; CR, LF, or CRLF are
+     * each returned as the single character '\n'.
+     */
+    private int nextChar() throws JessException {
+        if (m_pos == m_limit && !fill())
+            return EOF;
+        int c = m_buf[m_pos++];
+        if (c == '\r') {
+            if ((m_pos < m_limit || fill()) && m_buf[m_pos] == '\n') {
+                ++m_pos;
+                ++m_streamIndex;
+            }
+            c = '\n';
+        }
+        ++m_streamIndex;
+        return c;
+    }
+
+    /**
+     * Steps back over the last character returned by nextChar(). The
+     * window always keeps at least one consumed character, so this works
+     * across refills.
+     */
+    private void unread(int c) {
+        if (c == EOF)
+            return;
+        --m_pos;
+        --m_streamIndex;
+    }
+
+    /**
+     * Refill the window, keeping the last character for unread().
+     * Returns false at end of input.
+     */
+    private boolean fill() throws JessException {
+        if (m_eof)
+            return false;
+        int keep = 0;
+        if (m_limit > 0) {
+            m_buf[0] = m_buf[m_limit - 1];
+            keep = 1;
+        }
+        m_pos = m_limit = keep;
+        try {
+            int n;
+            do {
+                n = read(m_buf, keep, m_buf.length - keep);
+            } while (n == 0);
+            if (n < 0) {
+                m_eof = true;
+                return false;
+            }
+            m_limit = keep + n;
+            return true;
+        } catch (IOException ioe) {
+            throw new JessException("BufferedTokenizer.fill", "Error on input stream", ioe);
+        }
+    }
+
+    private int read(char[] buf, int offset, int length) throws IOException {
+        if (m_reader != null)
+            return m_reader.read(buf, offset, length);
+
+        if (m_flushed)
+            return -1;
+        CharBuffer out = CharBuffer.wrap(buf, offset, length);
+        CoderResult result = m_decoder.decode(m_bytes, out, true);
+        if (result.isError())
+            result.throwException();
+        if (!m_bytes.hasRemaining() && m_decoder.flush(out).isUnderflow())
+            m_flushed = true;
+        int n = out.position() - offset;
+        return (n == 0 && m_flushed) ? -1 : n;
+    }
+}
@@ -32,7 +32,7 @@ public class Context implements Serializable {
     private transient Rete m_engine;
     private LogicalNode m_logicalSupportNode;
     private Fact m_slotSpecificModifiedFact;
-    private String[] m_modifiedSlots;
+    private BitSet m_modifiedSlots;
 
     private Token m_token;
     private Fact m_fact;
@@ -176,7 +176,7 @@ public class Context implements Serializable {
         m_retval = null;
     }
 
-    private synchronized int nVariables() {
+    synchronized int nVariables() {
         if (m_variables == null)
             return 0;
         else
@@ -258,6 +258,21 @@ public class Context implements Serializable {
         return null;
     }
 
+    /**
+     * Returns the value stored for a variable in this context or a
+     * parent, without resolving it, or null if there is none.
+     */
+    synchronized Value findValue(String key) {
+        Context c = this;
+        while (c != null) {
+            Value v = (Value) c.getVariables().get(key);
+            if (v != null)
+                return v;
+            c = c.m_parent;
+        }
+        return null;
+    }
+
     synchronized void removeNonGlobals() {
         if (m_variables == null)
             return;
@@ -300,20 +315,32 @@ public class Context implements Serializable {
         int index = name.indexOf(m_engine.getMemberChar());
         String target = name.substring(0, index);
         String property = name.substring(index+1);
+        return getProperty(getDottedTarget(target), property);
+    }
+
+    /**
+     * Return the value of the variable named on the left of a dotted variable.
+     */
+    Value getDottedTarget(String target) throws JessException {
         Map map = findVariable(target);
         if (map == null)
             variableNotFound(target);
-        Value var = (Value) map.get(target);
+        return (Value) map.get(target);
+    }
+
+    /**
+     * Return the named slot or JavaBeans property of the object in a variable.
+     */
+    Value getProperty(Value var, String property) throws JessException {
         Object obj = var.javaObjectValue(this);
         if (obj instanceof Fact)
             return var.factValue(this).getSlotValue(property);
         else {
-            // TODO Refactoring so that we can do this without building the Funcall
             Funcall funcall = new Funcall("get", m_engine);
             funcall.arg(obj);
             funcall.arg(property);
             return funcall.execute(this);
-        }            
+        }
     }
 
     /**
@@ -415,14 +442,14 @@ public class Context implements Serializable {
         m_slotSpecificModifiedFact = slotSpecificModifiedFact;
     }
 
-    synchronized String[] getModifiedSlots() {
+    synchronized BitSet getModifiedSlots() {
         if (m_modifiedSlots == null)
             if (m_parent != null)
                 return m_parent.getModifiedSlots();
         return m_modifiedSlots;
     }
 
-    synchronized void setModifiedSlots(String[] modifiedSlots) {
+    synchronized void setModifiedSlots(BitSet modifiedSlots) {
         m_modifiedSlots = modifiedSlots;
     }
 
@@ -21,15 +21,13 @@ class CreateMF implements Userfunction, Serializable {
             switch (v.type()) {
                 case RU.LIST:
                     ValueVector list = v.listValue(context);
-                    for (int k = 0; k < list.size(); k++) {
-                        mf.add(list.get(k).resolveValue(context));
-                    }
+                    mf.addResolved(list, 0, list.size(), context);
                     break;
                 default:
                     mf.add(v);
                     break;
             }
         }
-        return new Value(mf, RU.LIST);
+        return new Value(mf.markInternal(), RU.LIST);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package jess;
 
 import java.util.HashMap;
+import java.io.PrintWriter;
 import java.io.Serializable;
 
 /**
@@ -13,6 +14,7 @@ import java.io.Serializable;
 class DebugFunctions extends IntrinsicPackageImpl {
     public void add(HashMap ht) {
         addFunction(new JessType(), ht);
+        addFunction(new ShowMetrics(), ht);
     }
 }
 
@@ -26,3 +28,33 @@ class JessType implements Userfunction, Serializable {
     }
 
 }
+
+/**
+ * (metrics) prints the engine's metrics report; (metrics reset) zeroes the
+ * counters; (metrics TRUE|FALSE) turns counting on or off, returning the
+ * previous setting.
+ */
+class ShowMetrics implements Userfunction, Serializable {
+    public String getName() {
+        return "metrics";
+    }
+
+    public Value call(ValueVector vv, Context context) throws JessException {
+        Rete engine = context.getEngine();
+        Metrics metrics = engine.getMetrics();
+        if (vv.size() > 1) {
+            Value arg = vv.get(1).resolveValue(context);
+            if (arg.equals("reset")) {
+                metrics.reset();
+                return Funcall.TRUE;
+            }
+            boolean was = metrics.isEnabled();
+            metrics.setEnabled(!arg.equals(Funcall.FALSE));
+            return was ? Funcall.TRUE : Funcall.FALSE;
+        }
+
+        PrintWriter pw = engine.getOutStream();
+        metrics.report(pw);
+        return Funcall.NIL;
+    }
+}
@@ -134,6 +134,19 @@ public class Deffunction implements Userfunction, Serializable, Visitable, Named
         m_actions.add(new FuncallValue(fc));
     }
 
+    /**
+     * Returns a copy of this deffunction that isn't bound to the
+     * functions of any particular engine.
+     */
+    Deffunction copy() throws JessException {
+        Deffunction copy = new Deffunction(m_name, m_docstring);
+        copy.m_arguments.addAll(m_arguments);
+        copy.m_hasWildcard = m_hasWildcard;
+        for (int i = 0; i < m_actions.size(); i++)
+            copy.m_actions.add(Funcall.copyUnbound(m_actions.get(i)));
+        return copy;
+    }
+
     /**
      * Add a simple value to this deffunction. The actions and values
      * added to a deffunction will be stored in the order added, and
@@ -15,6 +15,9 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
 
     // Keys are objects to match, values are the facts that represent them.
     private Map<Object, Fact> m_definstances = new IdentityHashMap<Object, Fact>(101);
+    // A read-only copy of the keys of m_definstances; discarded whenever an
+    // object is added or removed, and rebuilt on demand.
+    private transient volatile List<Object> m_snapshot;
     private transient Rete m_engine;
     public static final String JAVA_OBJECT = "$JAVA-OBJECT$ ";
 
@@ -30,10 +33,14 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
 
     void clear(Rete engine) {
         synchronized (engine.getWorkingMemoryLock()) {
-            for (Iterator<Object> it = m_definstances.keySet().iterator(); it.hasNext();)
-                removePropertyChangeListener(it.next());
+            for (Iterator<Map.Entry<Object, Fact>> it = m_definstances.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Object, Fact> entry = it.next();
+                if (entry.getValue().getShadowMode() == Fact.DYNAMIC)
+                    removePropertyChangeListener(entry.getKey());
+            }
 
             m_definstances.clear();
+            m_snapshot = null;
         }
     }
 
@@ -102,10 +109,118 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
         }
     }
 
+    /**
+     * Make shadow facts for a group of objects, using the defaults that
+     * Rete.add() uses, and assert them all at once. Objects already in
+     * working memory are skipped. If a shadow fact can't be built, the ones
+     * built so far are still asserted before the exception is thrown; if
+     * that fails too, its exception is attached to the original one as a
+     * suppressed exception.
+     */
+    int addAll(Rete engine, Collection objects, Context context) throws JessException {
+        synchronized (engine.getWorkingMemoryLock()) {
+            Map<Class, ShadowClass> classes = new HashMap<Class, ShadowClass>();
+            List<Fact> facts = new ArrayList<Fact>(objects.size());
+            List<Object> added = new ArrayList<Object>(objects.size());
+            try {
+                for (Iterator it = objects.iterator(); it.hasNext();) {
+                    Object object = it.next();
+                    if (m_definstances.containsKey(object))
+                        continue;
+                    ShadowClass shadow = classes.get(object.getClass());
+                    if (shadow == null) {
+                        shadow = new ShadowClass(engine, object);
+                        classes.put(object.getClass(), shadow);
+                    }
+                    engine.broadcastEvent(JessEvent.DEFINSTANCE, object, context);
+                    int shadowMode = shadow.m_addListener != null ? Fact.DYNAMIC : Fact.STATIC;
+                    facts.add(createNewShadowFact(object, shadow.m_deftemplate, context, shadowMode));
+                    added.add(object);
+                }
+            } catch (Throwable t) {
+                // The original problem is the one to report
+                try {
+                    assertShadowFacts(engine, facts, added, classes, context);
+                } catch (JessException je) {
+                    t.addSuppressed(je);
+                }
+                throw t;
+            }
+            return assertShadowFacts(engine, facts, added, classes, context);
+        }
+    }
+
+    private int assertShadowFacts(Rete engine, List<Fact> facts, List<Object> added,
+                                  Map<Class, ShadowClass> classes, Context context)
+            throws JessException {
+        int count = engine.assertFacts(facts, context);
+        for (int i = 0; i < added.size(); ++i) {
+            Object object = added.get(i);
+            Method apcl = classes.get(object.getClass()).m_addListener;
+            if (apcl != null && facts.get(i).getFactId() != -1)
+                addPropertyChangeListener(apcl, object);
+        }
+        return count;
+    }
+
+    /**
+     * What Rete.add() needs to know about the class of an object.
+     */
+    private static class ShadowClass {
+        final String m_template;
+        final Deftemplate m_deftemplate;
+        final Method m_addListener;
+
+        ShadowClass(Rete engine, Object object) throws JessException {
+            m_template = engine.resolveTemplateNameInFocusModule(engine.templateNameForObject(object));
+            try {
+                String javaTypename = engine.jessNameToJavaName(m_template);
+                if (javaTypename == null)
+                    throw new JessException("definstance", "Unknown object class", m_template);
+                if (!engine.findClass(javaTypename).isAssignableFrom(object.getClass()))
+                    throw new JessException("definstance", "Object is not instance of", javaTypename);
+                m_deftemplate = engine.createDeftemplate(m_template);
+                if (Definstance.acceptsPropertyChangeListeners(object, engine)) {
+                    Class pcl = engine.findClass("java.beans.PropertyChangeListener");
+                    m_addListener = object.getClass().getMethod("addPropertyChangeListener", new Class[]{pcl});
+                } else {
+                    m_addListener = null;
+                }
+            } catch (NoSuchMethodException nsm) {
+                throw new JessException("DefinstanceList.definstance",
+                        "Obj doesn't accept " +
+                                "PropertyChangeListeners",
+                        nsm);
+            } catch (ClassNotFoundException cnfe) {
+                throw new JessException("DefinstanceList.definstance",
+                        "Class not found", cnfe);
+            }
+        }
+    }
+
+    private void addPropertyChangeListener(Method apcl, Object object) throws JessException {
+        try {
+            apcl.invoke(object, new Object[]{this});
+        } catch (InvocationTargetException ite) {
+            throw new JessException("DefinstanceList.definstance",
+                    "Cannot add PropertyChangeListener",
+                    ite.getTargetException());
+        } catch (IllegalAccessException iae) {
+            throw new JessException("DefinstanceList.definstance",
+                    "Class or method is not accessible",
+                    iae);
+        }
+    }
+
     void undefinstanceNoRetract(Rete engine, Object o)  {
         synchronized (engine.getWorkingMemoryLock()) {
-            removePropertyChangeListener(o);
-            m_definstances.remove(o);
+            Fact fact = m_definstances.remove(o);
+            if (fact != null) {
+                m_snapshot = null;
+                // Only dynamic shadow facts have a listener to remove
+                if (fact.getShadowMode() == Fact.DYNAMIC)
+                    removePropertyChangeListener(o);
+            }
         }
     }
 
@@ -132,12 +247,22 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
         }
     }
 
-    Set<Object> listDefinstances(Rete engine) {
-        synchronized (engine.getWorkingMemoryLock()) {
-            // We build a new collection in case the client does something
-            // destructive with this iterator (like call undefinstance)
-            return new IdentityHashMap<Object, Fact>(m_definstances).keySet();
+    /**
+     * Returns a read-only list of the objects in working memory. The same
+     * list is returned until an object is added or removed, so clients can
+     * call undefinstance while iterating over it.
+     */
+    List<Object> listDefinstances(Rete engine) {
+        List<Object> snapshot = m_snapshot;
+        if (snapshot == null) {
+            synchronized (engine.getWorkingMemoryLock()) {
+                snapshot = m_snapshot;
+                if (snapshot == null)
+                    m_snapshot = snapshot =
+                            Collections.unmodifiableList(Arrays.asList(m_definstances.keySet().toArray()));
+            }
         }
+        return snapshot;
     }
 
     Set<Object> listDefinstances(Rete engine, Filter filter) {
@@ -182,27 +307,29 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
 
             Deftemplate deft = fact.getDeftemplate();
 
-            ArrayList<String> names = new ArrayList<String>();
-            ArrayList<Value> values = new ArrayList<Value>();
+            int nSlots = deft.getNSlots();
+            int[] indexes = new int[nSlots];
+            Value[] values = new Value[nSlots];
+            int nChanged = 0;
 
             try {
-                for (int i = 0; i < deft.getNSlots(); i++) {
+                for (int i = 0; i < nSlots; i++) {
                     String name = deft.getSlotName(i);
 
                     if (name.equals("OBJECT"))
                         continue;
 
                     Value newV = getSlotValueFromObject(deft, i, engine, o).resolveValue(context);
-                    Value oldV = fact.getSlotValue(name);
+                    Value oldV = fact.get(i);
 
                     if (oldV != null && oldV.equals(newV))
                         continue;
 
-                    names.add(name);
-                    values.add(newV);
+                    indexes[nChanged] = i;
+                    values[nChanged++] = newV;
                 }
-                engine.modifyRegularFact(fact, names.toArray(new String[names.size()]),
-                        values.toArray(new Value[values.size()]), engine, context);
+                engine.modifyRegularFact(fact, Arrays.copyOf(indexes, nChanged),
+                        Arrays.copyOf(values, nChanged), engine, context);
 
             } finally {
                 engine.commitActivations();
@@ -236,9 +363,9 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
                     newV = objectPropertyToSlotValue(deft, index, engine, newValue);
 
                 try {
-                    if (!fact.getSlotValue(slotName).equals(newV))
+                    if (!fact.get(index).equals(newV))
                         engine.modifyRegularFact(fact,
-                                new String[]{slotName},
+                                new int[]{index},
                                 new Value[]{newV},
                                 engine, context);
                 } finally {
@@ -275,8 +402,17 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
                                      int shadowMode)
             throws JessException {
 
+        return createNewShadowFact(o, m_engine.createDeftemplate(clazz), context, shadowMode);
+    }
+
+    private Fact createNewShadowFact(Object o,
+                                     Deftemplate template,
+                                     Context context,
+                                     int shadowMode)
+            throws JessException {
+
         synchronized (m_engine.getWorkingMemoryLock()) {
-            Fact fact = new Fact(clazz, m_engine);
+            Fact fact = new Fact(template);
             fact.setShadowMode(shadowMode);
             setAllSlotValuesFromObject(context, fact, o);
             fact.setExpanded();
@@ -290,19 +426,20 @@ class DefinstanceList implements Serializable, PropertyChangeListener {
             Rete engine = context.getEngine();
 
             fact.setSlotValue("OBJECT", new Value(o));
-            m_definstances.put(o, fact);
+            if (m_definstances.put(o, fact) == null)
+                m_snapshot = null;
 
             Deftemplate deft = fact.getDeftemplate();
+            int objectSlot = deft.getSlotIndex("OBJECT");
+            int nSlots = deft.getNSlots();
 
-            for (int i = 0; i < deft.getNSlots(); i++) {
-                String name = deft.getSlotName(i);
-
-                if (name.equals("OBJECT"))
+            for (int i = 0; i < nSlots; i++) {
+                if (i == objectSlot)
                     continue;
 
                 Value newV = getSlotValueFromObject(deft, i, engine, o);
 
-                fact.setSlotValue(name, newV);
+                fact.setSlotValue(i, newV);
             }
         }
     }
@@ -21,6 +21,9 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
     private boolean m_autoFocus = false;
     private boolean m_noLoop;
     private Set m_testedSlots = new HashSet();
+    // Template -> BitSet of slots tested by this rule, built from
+    // m_testedSlots on demand; guarded by m_testedSlots
+    private transient Map m_testedSlotMasks;
     private final String m_actKey;
     private final String m_salKey;
     private final String m_sscKey;
@@ -172,8 +175,10 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
         super.addCE(ce, engine);
 
         // Make a note of slots that should matter for per-slot activation
-        ce.recordTestedSlots(m_testedSlots);
-
+        synchronized (m_testedSlots) {
+            ce.recordTestedSlots(m_testedSlots);
+            m_testedSlotMasks = null;
+        }
     }
 
     boolean isSlotTested(Deftemplate template, int slotIndex) {
@@ -188,32 +193,27 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
 
 
     private boolean isSlotTested(Context context) {
-        Fact fact = context.getSlotSpecificModifiedFact();
-        String[] slotNames = context.getModifiedSlots();
-
-        // TODO Inheritance
-        Deftemplate template = fact.getDeftemplate();
-        for (int i = 0; i < slotNames.length; i++) {
-            String slotName = slotNames[i];
-            int slotIndex = fact.getDeftemplate().getSlotIndex(slotName);
-            if (isSlotTested(template, slotIndex)) {
-                return true;
-            } 
-        }
-        return false;
+        return isSlotTested(context.getSlotSpecificModifiedFact().getDeftemplate(), context);
     }
 
-    // TODO Must handle inheritance
     private boolean isSlotTested(Deftemplate template, Context context) {
-        Fact fact = context.getSlotSpecificModifiedFact();
-        String[] slotNames = context.getModifiedSlots();
-        for (int i = 0; i < slotNames.length; i++) {
-            String slotName = slotNames[i];
-            int slotIndex = fact.getDeftemplate().getSlotIndex(slotName);
-            if (isSlotTested(template, slotIndex))
-                return true;
+        return getTestedSlotMask(template).intersects(context.getModifiedSlots());
+    }
+
+    private BitSet getTestedSlotMask(Deftemplate template) {
+        synchronized (m_testedSlots) {
+            if (m_testedSlotMasks == null)
+                m_testedSlotMasks = new HashMap();
+            BitSet mask = (BitSet) m_testedSlotMasks.get(template);
+            if (mask == null) {
+                mask = new BitSet(template.getNSlots());
+                for (int i = 0; i < template.getNSlots(); i++)
+                    if (isSlotTested(template, i))
+                        mask.set(i);
+                m_testedSlotMasks.put(template, mask);
+            }
+            return mask;
         }
-        return false;
     }
 
     private void doAddCall(int tag, Token token, Context context, Rete engine) throws JessException {
@@ -221,19 +221,19 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
             Activation a = new Activation(engine, token, this);
             engine.addActivation(a);
             getActivations(engine).put(token, a);
+            engine.getMetrics().activationCreated(this);
+            Telemetry telemetry = engine.getTelemetry();
+            if (telemetry != null)
+                telemetry.activationEvent(Telemetry.ACTIVATION_CREATED, this, token);
 
         } else if (isModifyAddOnSlotSpecificUnmatched(tag, context)) {
             // See comment at end of file
-            List cache = getSlotSpecificCache(engine);
+            Map cache = getSlotSpecificCache(engine);
             if (cache.size() > 0) {
-                for (Iterator it = cache.iterator(); it.hasNext();) {
-                    Activation a = (Activation) it.next();
-                    if (token.fastDataEquals(a.getToken())) {
-                        it.remove();
-                        a.replaceToken(token);
-                        getActivations(engine).put(token, a);
-                        break;
-                    }
+                Activation a = removeCachedActivation(cache, token);
+                if (a != null) {
+                    a.replaceToken(token);
+                    getActivations(engine).put(token, a);
                 }
             }
         }
@@ -258,13 +258,17 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
             Activation a = (Activation) getActivations(engine).remove(token);
             if (a != null) {                
                 engine.removeActivation(a);
+                engine.getMetrics().activationCancelled(this);
+                Telemetry telemetry = engine.getTelemetry();
+                if (telemetry != null)
+                    telemetry.activationEvent(Telemetry.ACTIVATION_CANCELLED, this, token);
             }
 
         } else if (isModifyRemoveOnSlotSpecificUnmatched(tag, context)) {
             // See comment at end of file
             Activation a = (Activation) getActivations(engine).remove(token);
             if (a != null) {
-                getSlotSpecificCache(engine).add(a);
+                cacheActivation(getSlotSpecificCache(engine), a);
             }
         }
     }
@@ -273,15 +277,57 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
         return tag == RU.MODIFY_REMOVE && context.getSlotSpecificModifiedFact() != null;
     }
 
-    private List getSlotSpecificCache(Rete engine) {
-        List cache = (List) engine.getKeyedStorage(m_sscKey);
+    // Maps token sortcode to an Activation or an ArrayList of them. The
+    // sortcode depends only on fact ids, so it's the same before and
+    // after the modify.
+    private Map getSlotSpecificCache(Rete engine) {
+        Map cache = (Map) engine.getKeyedStorage(m_sscKey);
         if (cache == null) {
-            cache = new ArrayList();
+            cache = new HashMap();
             engine.putKeyedStorage(m_sscKey, cache);
         }
         return cache;
     }
 
+    private void cacheActivation(Map cache, Activation a) {
+        Integer key = new Integer(a.getToken().m_sortcode);
+        Object current = cache.get(key);
+        if (current == null)
+            cache.put(key, a);
+        else if (current instanceof ArrayList)
+            ((ArrayList) current).add(a);
+        else {
+            ArrayList list = new ArrayList();
+            list.add(current);
+            list.add(a);
+            cache.put(key, list);
+        }
+    }
+
+    private Activation removeCachedActivation(Map cache, Token token) {
+        Integer key = new Integer(token.m_sortcode);
+        Object current = cache.get(key);
+        if (current instanceof Activation) {
+            Activation a = (Activation) current;
+            if (token.fastDataEquals(a.getToken())) {
+                cache.remove(key);
+                return a;
+            }
+        } else if (current != null) {
+            ArrayList list = (ArrayList) current;
+            for (int i = 0; i < list.size(); i++) {
+                Activation a = (Activation) list.get(i);
+                if (token.fastDataEquals(a.getToken())) {
+                    list.remove(i);
+                    if (list.isEmpty())
+                        cache.remove(key);
+                    return a;
+                }
+            }
+        }
+        return null;
+    }
+
     private boolean shouldRemoveCall(int tag, Token token, Context context) {
         if (tag == RU.MODIFY_REMOVE)
             return context.getSlotSpecificModifiedFact() == null || isSlotTested(context);
@@ -366,14 +412,7 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
 
         if (m_logicalNode != null) {
 
-            Token logicalToken = fact_input;
-            int count = fact_input.size();
-
-            int logicalSize = m_logicalNode.getTokenSize();
-            while (count > logicalSize) {
-                logicalToken = logicalToken.getParent();
-                --count;
-            }
+            Token logicalToken = fact_input.prefix(m_logicalNode.getTokenSize());
 
             c.setLogicalSupportNode(m_logicalNode);
             c.setToken(logicalToken);
@@ -393,6 +432,10 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
      */
     void fire(Token factInput, Rete engine, Context context) throws JessException {
         getActivations(engine).remove(factInput);
+        Metrics metrics = engine.getMetrics();
+        long start = metrics.fireStarted();
+        Telemetry telemetry = engine.getTelemetry();
+        long fireStart = telemetry != null ? telemetry.fireStarted() : 0;
         Context c = context.push();
         c.clearReturnValue();
 
@@ -420,6 +463,9 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
             throw re;
         } finally {
             c.pop();
+            metrics.ruleFired(this, start);
+            if (telemetry != null)
+                telemetry.ruleFired(this, factInput, fireStart);
         }
 
     }
@@ -593,7 +639,8 @@ public class Defrule extends HasLHS implements Serializable, MatchInfoSource {
      * for each fact, then put it back into storage.
      *
      * Since a single fact may be part of multiple activations on the same rule, there may be more than one activation in
-     * the cache; we have to look at each of them until we find the right one.
+     * the cache; they're filed by token sortcode, so we only have to look at the ones for the same facts until we find
+     * the right one.
      *
      * Optimization: do this only if Fact.getIcon() != Fact. I think we can get away with this since Token.hashCode()
      * doesn't depend on fact data.
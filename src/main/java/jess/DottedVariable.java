@@ -0,0 +1,134 @@
+package jess;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A reference to a property of the object in a variable, like ?x.name.
+ * The parser splits the name once, and when the variable holds a Java
+ * object, the property's read method is looked up once per receiver class
+ * and then called directly, instead of building and executing a call to
+ * "get" on every reference.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+class DottedVariable extends Variable implements Serializable {
+    private static final Object[] NO_ARGS = {};
+
+    private final String m_target;
+    private final String m_property;
+    private transient Accessor m_accessor;
+
+    /**
+     * Create a DottedVariable.
+     *
+     * @param name       the whole name of the variable, including the property
+     * @param memberChar the character that separates the variable from the property
+     * @throws JessException if the name is invalid
+     */
+    DottedVariable(String name, char memberChar) throws JessException {
+        super(name, RU.VARIABLE);
+        int index = name.indexOf(memberChar);
+        m_target = name.substring(0, index);
+        m_property = name.substring(index + 1);
+    }
+
+    /**
+     * Will resolve the variable, then return the value of the property.
+     *
+     * @param c an evaluation context. Cannot be null!
+     * @return the value of the property
+     * @throws JessException if the variable is undefined, or the property can't be read
+     */
+    public Value resolveValue(Context c) throws JessException {
+        if (c == null)
+            return super.resolveValue(c);
+
+        Value var = c.getDottedTarget(m_target);
+        if (var.type() != RU.JAVA_OBJECT)
+            return c.getProperty(var, m_property);
+
+        Object obj = var.javaObjectValue(c);
+        if (obj instanceof Fact)
+            return c.getProperty(var, m_property);
+
+        Accessor accessor = m_accessor;
+        if (accessor == null || accessor.m_class != obj.getClass())
+            m_accessor = accessor = new Accessor(obj.getClass(), findReadMethod(obj.getClass(), c.getEngine()));
+
+        if (accessor.m_method == null)
+            return c.getProperty(var, m_property);
+
+        try {
+            Method m = accessor.m_method;
+            return RU.objectToValue(m.getReturnType(), m.invoke(obj, NO_ARGS));
+        } catch (InvocationTargetException ite) {
+            if (ite.getTargetException() instanceof JessException)
+                throw (JessException) ite.getTargetException();
+            else
+                throw new JessException("call", "Called method threw an exception",
+                        ite.getTargetException());
+        } catch (IllegalAccessException iae) {
+            throw new JessException("call", "Method is not accessible", iae);
+        }
+    }
+
+    /**
+     * Find the public read method for the property in the given class, or
+     * return null if the property has none we can call directly.
+     */
+    private Method findReadMethod(Class clazz, Rete engine) throws JessException {
+        try {
+            ClassResearcher.Property[] pd = engine.getClassResearcher().getBeanProperties(clazz.getName());
+            for (int i = 0; i < pd.length; i++) {
+                Method m = pd[i].getReadMethod();
+                if (m != null && pd[i].getName().equals(m_property))
+                    return accessibleMethod(clazz, m);
+            }
+        } catch (ClassNotFoundException cnfe) {
+            // Let "get" report it
+        }
+        return null;
+    }
+
+    // A public method of a non-public class has to be called through a
+    // public interface or superclass, just as in "call".
+    private static Method accessibleMethod(Class clazz, Method m) {
+        if (!Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+            Class[] interfaces = clazz.getInterfaces();
+            Method found = null;
+            for (int i = 0; i < interfaces.length && found == null; i++) {
+                try {
+                    found = interfaces[i].getMethod(m.getName(), m.getParameterTypes());
+                } catch (NoSuchMethodException ignored) {
+                }
+            }
+            if (found != null)
+                m = found;
+        }
+        if (!Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+            try {
+                m.setAccessible(true);
+            } catch (RuntimeException ignore) {
+                return null;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * The read method for one receiver class.
+     */
+    private static final class Accessor {
+        final Class m_class;
+        final Method m_method;
+
+        Accessor(Class clazz, Method method) {
+            m_class = clazz;
+            m_method = method;
+        }
+    }
+}
@@ -339,7 +339,7 @@ public class Fact extends ValueVector implements Serializable, Modular, Visitabl
             set(m_deft.getSlotDefault(i), i);
     }
 
-    private int findSlot(String slotname) throws JessException {
+    int findSlot(String slotname) throws JessException {
         int index = m_deft.getSlotIndex(slotname);
         if (index == -1)
             throw new JessException("Fact.findSlot",
@@ -372,7 +372,14 @@ public class Fact extends ValueVector implements Serializable, Modular, Visitabl
      */
     public final void setSlotValue(String slotname, Value value)
         throws JessException {
-        int slot = findSlot(slotname);
+        setSlotValue(findSlot(slotname), value);
+    }
+
+    /**
+     * Set the value in the slot with the given index, as
+     * {@link #setSlotValue(String, Value)} does.
+     */
+    final void setSlotValue(int slot, Value value) throws JessException {
         if (m_deft.getSlotType(slot) == RU.MULTISLOT)
             if (value.type() != RU.LIST)
                 value = new Value(new ValueVector().add(value), RU.LIST);
@@ -395,8 +402,13 @@ public class Fact extends ValueVector implements Serializable, Modular, Visitabl
             for (int j=0; j<size(); j++){
                 Value current = get(j).resolveValue(context);
                 if (current.type() == RU.LIST) {
-                    ValueVector vv = new ValueVector();
                     ValueVector list = current.listValue(context);
+                    // A multislot list that needs no flattening is kept as it is
+                    if (list.isShareable() && getDeftemplate().getSlotType(j) != RU.SLOT) {
+                        set(current, j);
+                        continue;
+                    }
+                    ValueVector vv = new ValueVector(list.size());
                     for (int k=0; k<list.size(); k++) {
                         Value listItem = list.get(k).resolveValue(context);
                         if (listItem.type() == RU.LIST) {
@@ -410,7 +422,7 @@ public class Fact extends ValueVector implements Serializable, Modular, Visitabl
                     if (getDeftemplate().getSlotType(j) == RU.SLOT)
                        current = vv.get(0);
                     else
-                       current = new Value(vv, RU.LIST);
+                       current = new Value(vv.markInternal(), RU.LIST);
                 }
                 set(current, j);
             }
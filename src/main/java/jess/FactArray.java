@@ -0,0 +1,48 @@
+package jess;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fact storage for array-backed Tokens. One array is shared by a chain
+ * of tokens, each of which uses a prefix of it: a token of size n that
+ * is extended by a fact writes it into slot n if nobody has claimed
+ * that slot yet, and otherwise copies its prefix into a new array.
+ * Slots are written once and never change afterwards. A slot is claimed
+ * with a compare-and-set on the count of used slots, so extending a
+ * token never takes a lock.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+final class FactArray implements Serializable {
+    final Fact[] m_facts;
+    private final AtomicInteger m_used = new AtomicInteger();
+
+    FactArray(int capacity) {
+        m_facts = new Fact[capacity];
+    }
+
+    boolean claim(int index, Fact fact) {
+        if (index >= m_facts.length || !m_used.compareAndSet(index, index + 1))
+            return false;
+        m_facts[index] = fact;
+        return true;
+    }
+
+    /**
+     * Returns an array holding the first <code>size</code> facts of
+     * this one followed by <code>fact</code>; this array itself if
+     * possible.
+     */
+    FactArray extend(int size, Fact fact) {
+        if (claim(size, fact))
+            return this;
+
+        FactArray array = new FactArray(Math.max(size + 1, Math.min(size * 2, size + 8)));
+        System.arraycopy(m_facts, 0, array.m_facts, 0, size);
+        array.m_facts[size] = fact;
+        array.m_used.set(size + 1);
+        return array;
+    }
+}
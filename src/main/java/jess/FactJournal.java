@@ -0,0 +1,951 @@
+package jess;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>A write-ahead journal of working memory. Once a FactJournal is
+ * attached to an engine using {@link Rete#setFactJournal}, every
+ * assertion, retraction and modification of a regular fact is appended
+ * to a memory-mapped segment file as a compact binary record. Unlike
+ * <tt>bsave</tt> or <tt>save-facts</tt>, the cost of journaling is
+ * proportional to the size of each change, not to the size of working
+ * memory.</p>
+ *
+ * <p>The journal's file always begins with a snapshot of working memory
+ * taken when it was attached. Whenever the number of records grows well
+ * beyond the number of live facts, or a segment reaches
+ * {@link #MAX_SEGMENT_SIZE}, the journal rolls over: new records go to
+ * a fresh segment file next to the first, named with a sequence number
+ * (<tt>facts.jnl.1</tt>, <tt>facts.jnl.2</tt>, and so on). A background
+ * thread then merges the sealed segments into a new snapshot, which
+ * atomically replaces the journal file, and deletes them. The merge
+ * works from the journal's own records, so the engine is never stopped
+ * while it runs.</p>
+ *
+ * <p>To restore working memory after a restart, define the same
+ * templates in a new engine, then call {@link #recover}:</p>
+ *
+ * <pre>
+ * Rete engine = new Rete();
+ * engine.batch("rules.clp");
+ * FactJournal.recover(file, engine);
+ * engine.setFactJournal(new FactJournal(file));
+ * </pre>
+ *
+ * <p>Shadow facts are not journaled; the objects they represent must be
+ * added to the new engine again. Slots holding Java objects are
+ * recorded as <tt>nil</tt>, and logically supported facts are restored
+ * without their logical support.</p>
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public class FactJournal {
+
+    /**
+     * The default number of records written before the journal
+     * considers compacting itself.
+     */
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 100000;
+
+    /**
+     * The size a segment file may grow to before the journal rolls
+     * over to a new one.
+     */
+    public static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private static final int MAGIC = 0x4a4a524e;
+    private static final int VERSION = 2;
+    // Magic number, version, and the segment's sequence number. For the
+    // journal file itself, that's the last segment merged into it.
+    private static final int HEADER_SIZE = 12;
+    private static final int INITIAL_SEGMENT_SIZE = 1 << 20;
+
+    // Record types. Zero marks the end of the journal.
+    private static final byte END = 0;
+    private static final byte CLEAR = 1;
+    private static final byte ASSERT = 2;
+    private static final byte RETRACT = 3;
+    private static final byte MODIFY = 4;
+
+    // Value tags
+    private static final byte V_NIL = 0;
+    private static final byte V_SYMBOL = 1;
+    private static final byte V_STRING = 2;
+    private static final byte V_INTEGER = 3;
+    private static final byte V_LONG = 4;
+    private static final byte V_FLOAT = 5;
+    private static final byte V_FACT = 6;
+    private static final byte V_LIST = 7;
+
+    private final File m_file;
+    private RandomAccessFile m_raf;
+    private MappedByteBuffer m_segment;
+    private int m_sequence;
+    private final RecordBuffer m_bytes = new RecordBuffer();
+    private final DataOutputStream m_data = new DataOutputStream(m_bytes);
+    private int m_records;
+    private int m_compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private Thread m_merger;
+    private Exception m_mergeError;
+
+    /**
+     * Create a journal that will write to the given file. Nothing is
+     * written until the journal is attached to an engine.
+     *
+     * @param file the journal file
+     */
+    public FactJournal(File file) {
+        m_file = file;
+    }
+
+    /**
+     * Return the file this journal writes to.
+     *
+     * @return the journal file
+     */
+    public File getFile() {
+        return m_file;
+    }
+
+    /**
+     * Set the number of records after which the journal will compact
+     * itself, provided the records also outnumber the live facts by a
+     * comfortable margin.
+     *
+     * @param threshold a number of records
+     */
+    public synchronized void setCompactionThreshold(int threshold) {
+        m_compactionThreshold = threshold;
+    }
+
+    /**
+     * Return the compaction threshold.
+     *
+     * @return a number of records
+     * @see #setCompactionThreshold
+     */
+    public synchronized int getCompactionThreshold() {
+        return m_compactionThreshold;
+    }
+
+    /**
+     * Force all journaled records out to the storage device. Records
+     * survive a crash of the JVM without this call, but not
+     * necessarily a crash of the operating system.
+     */
+    public synchronized void sync() {
+        if (m_segment != null)
+            m_segment.force();
+    }
+
+    /**
+     * Wait for any compaction in progress, then flush and close the
+     * active segment. The journal may be reattached to an engine
+     * afterwards, which starts a new snapshot.
+     *
+     * @throws JessException if an I/O error occurs, or a compaction failed
+     */
+    public synchronized void close() throws JessException {
+        awaitMerge();
+        try {
+            if (m_raf != null) {
+                m_segment.force();
+                m_raf.close();
+            }
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.close", "I/O error", ioe);
+        } finally {
+            m_raf = null;
+            m_segment = null;
+        }
+        checkMergeError();
+    }
+
+    // **********************************************************************
+    // Writing
+    // **********************************************************************
+
+    synchronized void cleared() throws JessException {
+        if (m_segment == null)
+            return;
+        m_bytes.reset();
+        append(CLEAR);
+    }
+
+    synchronized void factAsserted(Fact f) throws JessException {
+        if (m_segment == null || f.isShadow())
+            return;
+        try {
+            m_bytes.reset();
+            writeFact(f);
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.factAsserted", "I/O error", ioe);
+        }
+        append(ASSERT);
+    }
+
+    synchronized void factRetracted(Fact f) throws JessException {
+        if (m_segment == null || f.isShadow())
+            return;
+        try {
+            m_bytes.reset();
+            m_data.writeInt(f.getFactId());
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.factRetracted", "I/O error", ioe);
+        }
+        append(RETRACT);
+    }
+
+    synchronized void factModified(Fact f, int[] slotIndexes) throws JessException {
+        if (m_segment == null || f.isShadow())
+            return;
+        try {
+            m_bytes.reset();
+            m_data.writeInt(f.getFactId());
+            m_data.writeShort(slotIndexes.length);
+            for (int i = 0; i < slotIndexes.length; i++) {
+                int index = slotIndexes[i];
+                m_data.writeShort(index);
+                writeValue(f.get(index));
+            }
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.factModified", "I/O error", ioe);
+        }
+        append(MODIFY);
+    }
+
+    /**
+     * If the records written since the last compaction far outnumber
+     * the live facts, roll over to a new segment and merge the old ones
+     * in the background. Only the rollover happens on the caller's
+     * thread.
+     */
+    synchronized void compactIfNeeded(int liveFacts) throws JessException {
+        checkMergeError();
+        if (m_segment == null || m_merger != null)
+            return;
+        if (m_records > m_compactionThreshold && m_records > 4 * liveFacts) {
+            try {
+                rollOver();
+            } catch (IOException ioe) {
+                throw new JessException("FactJournal.compact", "I/O error", ioe);
+            }
+        }
+    }
+
+    /**
+     * Start the journal with a snapshot of the given facts. The
+     * snapshot is written to a temporary file which is then atomically
+     * moved over the journal file, so the previous journal remains
+     * valid, and remains the active segment, until the new one is
+     * complete.
+     */
+    synchronized void attach(Iterator<Fact> facts) throws JessException {
+        awaitMerge();
+        checkMergeError();
+        File temp = new File(m_file.getPath() + ".compact");
+        try {
+            // Segments left from earlier use of the file must not be
+            // replayed on top of the new snapshot
+            int sequence = readSequence(m_file);
+            while (segmentFile(m_file, sequence + 1).exists())
+                ++sequence;
+
+            SnapshotWriter writer = new SnapshotWriter(temp, sequence);
+            try {
+                writer.record(CLEAR, m_bytes.array(), 0, 0);
+                while (facts.hasNext()) {
+                    Fact f = facts.next();
+                    if (f.isShadow())
+                        continue;
+                    m_bytes.reset();
+                    writeFact(f);
+                    writer.record(ASSERT, m_bytes.array(), 0, m_bytes.size());
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            Files.move(temp.toPath(), m_file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            RandomAccessFile oldRaf = m_raf;
+            m_raf = null;
+            m_segment = null;
+            if (oldRaf != null)
+                oldRaf.close();
+            for (int i = 1; i <= sequence; i++)
+                segmentFile(m_file, i).delete();
+            openSegment(m_file, sequence);
+            m_records = 0;
+        } catch (IOException ioe) {
+            temp.delete();
+            throw new JessException("FactJournal.attach", "I/O error", ioe);
+        }
+    }
+
+    /**
+     * Seal the active segment and start writing to the next one. If no
+     * merge is running, start one to fold the sealed segments into the
+     * journal file.
+     */
+    private void rollOver() throws IOException {
+        int sealed = m_sequence;
+        RandomAccessFile oldRaf = m_raf;
+        MappedByteBuffer oldSegment = m_segment;
+        try {
+            openSegment(segmentFile(m_file, sealed + 1), sealed + 1);
+        } catch (IOException ioe) {
+            m_raf = oldRaf;
+            m_segment = oldSegment;
+            throw ioe;
+        }
+        oldSegment.force();
+        oldRaf.close();
+        m_sequence = sealed + 1;
+        m_records = 0;
+        if (m_merger == null)
+            startMerge(sealed);
+    }
+
+    private void startMerge(final int upTo) {
+        Thread merger = new Thread("FactJournal compaction") {
+            public void run() {
+                Exception error = null;
+                try {
+                    merge(m_file, upTo);
+                } catch (Exception e) {
+                    error = e;
+                }
+                synchronized (FactJournal.this) {
+                    if (error != null)
+                        m_mergeError = error;
+                    m_merger = null;
+                    FactJournal.this.notifyAll();
+                }
+            }
+        };
+        merger.setDaemon(true);
+        m_merger = merger;
+        merger.start();
+    }
+
+    private void awaitMerge() throws JessException {
+        try {
+            while (m_merger != null)
+                wait();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new JessException("FactJournal", "Interrupted waiting for compaction", ie);
+        }
+    }
+
+    // A failed background compaction is reported once, to the next caller
+    private void checkMergeError() throws JessException {
+        Exception error = m_mergeError;
+        if (error != null) {
+            m_mergeError = null;
+            throw new JessException("FactJournal.compact", "Background compaction failed", error);
+        }
+    }
+
+    private void openSegment(File file, int sequence) throws IOException {
+        boolean existed = file.length() >= HEADER_SIZE;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer segment;
+        try {
+            long size = Math.min(MAX_SEGMENT_SIZE, Math.max(INITIAL_SEGMENT_SIZE, raf.length()));
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException ioe) {
+            raf.close();
+            throw ioe;
+        }
+        if (!existed) {
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, VERSION);
+            segment.putInt(8, sequence);
+        }
+        segment.position(findEnd(segment));
+        m_raf = raf;
+        m_segment = segment;
+        m_sequence = sequence;
+    }
+
+    private static File segmentFile(File file, int sequence) {
+        return new File(file.getPath() + "." + sequence);
+    }
+
+    // The sequence number in a journal file's header, or 0
+    private static int readSequence(File file) throws IOException {
+        if (file.length() < HEADER_SIZE)
+            return 0;
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return 0;
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int findEnd(ByteBuffer segment) {
+        int position = HEADER_SIZE;
+        while (position + 5 <= segment.limit() && segment.get(position) != END) {
+            int length = segment.getInt(position + 1);
+            if (length < 0 || position + 5L + length > segment.limit())
+                break;
+            position += 5 + length;
+        }
+        return position;
+    }
+
+    private void append(byte type) throws JessException {
+        int length = m_bytes.size();
+        try {
+            if (m_segment.position() + 6L + length > MAX_SEGMENT_SIZE) {
+                if (HEADER_SIZE + 6L + length > MAX_SEGMENT_SIZE)
+                    throw new JessException("FactJournal.append", "Record too large for a journal segment", length);
+                rollOver();
+            }
+            ensureCapacity(m_segment.position() + 6 + length);
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.append", "I/O error", ioe);
+        }
+        // Write the body first and the type last, so that a torn
+        // record looks like the end of the journal.
+        int start = m_segment.position();
+        m_segment.position(start + 1);
+        m_segment.putInt(length);
+        m_segment.put(m_bytes.array(), 0, length);
+        int end = m_segment.position();
+        m_segment.put(end, END);
+        m_segment.put(start, type);
+        ++m_records;
+    }
+
+    // Never asked for more than MAX_SEGMENT_SIZE; append rolls over first
+    private void ensureCapacity(int needed) throws IOException {
+        if (needed <= m_segment.capacity())
+            return;
+        int position = m_segment.position();
+        long size = Math.min(MAX_SEGMENT_SIZE, Math.max(2L * m_segment.capacity(), needed));
+        m_segment.force();
+        m_segment = m_raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        m_segment.position(position);
+    }
+
+    private void writeFact(Fact f) throws IOException, JessException {
+        m_data.writeInt(f.getFactId());
+        writeString(f.getName());
+        m_data.writeShort(f.size());
+        for (int i = 0; i < f.size(); i++)
+            writeValue(f.get(i));
+    }
+
+    // Unlike writeUTF, this has no 64K limit on the encoded length
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        m_data.writeInt(bytes.length);
+        m_data.write(bytes);
+    }
+
+    private void writeValue(Value v) throws IOException, JessException {
+        switch (v.type()) {
+            case RU.SYMBOL:
+                m_data.writeByte(V_SYMBOL);
+                writeString(v.symbolValue(null));
+                break;
+            case RU.STRING:
+                m_data.writeByte(V_STRING);
+                writeString(v.stringValue(null));
+                break;
+            case RU.INTEGER:
+                m_data.writeByte(V_INTEGER);
+                m_data.writeInt(v.intValue(null));
+                break;
+            case RU.LONG:
+                m_data.writeByte(V_LONG);
+                m_data.writeLong(v.longValue(null));
+                break;
+            case RU.FLOAT:
+                m_data.writeByte(V_FLOAT);
+                m_data.writeDouble(v.floatValue(null));
+                break;
+            case RU.FACT:
+                m_data.writeByte(V_FACT);
+                m_data.writeInt(v.factValue(null).getFactId());
+                break;
+            case RU.LIST: {
+                ValueVector vv = v.listValue(null);
+                m_data.writeByte(V_LIST);
+                m_data.writeInt(vv.size());
+                for (int i = 0; i < vv.size(); i++)
+                    writeValue(vv.get(i));
+                break;
+            }
+            default:
+                m_data.writeByte(V_NIL);
+                break;
+        }
+    }
+
+    // **********************************************************************
+    // Compaction
+    // **********************************************************************
+
+    /**
+     * Fold the journal file and the sealed segments up to the given one
+     * into a new snapshot, which replaces the journal file. Works only
+     * from the files, so it can run while the engine carries on.
+     */
+    private static void merge(File file, int upTo) throws IOException, JessException {
+        Map<Integer, FactImage> facts = new TreeMap<Integer, FactImage>();
+        int base = replayImages(file, facts);
+        for (int i = base + 1; i <= upTo; i++)
+            replayImages(segmentFile(file, i), facts);
+
+        File temp = new File(file.getPath() + ".compact");
+        SnapshotWriter writer = new SnapshotWriter(temp, upTo);
+        try {
+            writer.record(CLEAR, new byte[0], 0, 0);
+            for (Map.Entry<Integer, FactImage> entry : facts.entrySet()) {
+                byte[] body = entry.getValue().toAssertRecord(entry.getKey());
+                writer.record(ASSERT, body, 0, body.length);
+            }
+            writer.finish();
+        } catch (IOException ioe) {
+            temp.delete();
+            throw ioe;
+        } finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Anything left behind has a sequence number no higher than the
+        // journal file's, so it will never be replayed
+        for (int i = base + 1; i <= upTo; i++)
+            segmentFile(file, i).delete();
+    }
+
+    /**
+     * Apply the records in one file to a map of encoded facts, and
+     * return the file's sequence number.
+     */
+    private static int replayImages(File file, Map<Integer, FactImage> facts) throws IOException, JessException {
+        ByteBuffer segment = map(file);
+        while (segment.remaining() >= 5) {
+            int start = segment.position();
+            byte type = segment.get();
+            if (type == END)
+                break;
+            int length = segment.getInt();
+            if (length < 0 || length > segment.remaining())
+                break;
+            ByteBuffer body = segment.slice();
+            body.limit(length);
+            switch (type) {
+                case CLEAR:
+                    facts.clear();
+                    break;
+                case ASSERT: {
+                    int id = body.getInt();
+                    byte[] name = copy(body, body.position(), skipString(body));
+                    byte[][] slots = new byte[body.getShort()][];
+                    for (int i = 0; i < slots.length; i++)
+                        slots[i] = copy(body, body.position(), skipValue(body));
+                    facts.put(id, new FactImage(name, slots));
+                    break;
+                }
+                case RETRACT:
+                    facts.remove(body.getInt());
+                    break;
+                case MODIFY: {
+                    FactImage image = facts.get(body.getInt());
+                    int nSlots = body.getShort();
+                    for (int i = 0; i < nSlots; i++) {
+                        int index = body.getShort();
+                        byte[] value = copy(body, body.position(), skipValue(body));
+                        if (image != null && index < image.m_slots.length)
+                            image.m_slots[index] = value;
+                    }
+                    break;
+                }
+                default:
+                    throw new JessException("FactJournal.compact", "Corrupt record at offset", start);
+            }
+            segment.position(start + 5 + length);
+        }
+        return segment.getInt(8);
+    }
+
+    private static byte[] copy(ByteBuffer body, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = body.get(from + i);
+        return bytes;
+    }
+
+    // Each returns the position just past what it skipped
+    private static int skipString(ByteBuffer body) {
+        int length = body.getInt();
+        body.position(body.position() + length);
+        return body.position();
+    }
+
+    private static int skipValue(ByteBuffer body) {
+        switch (body.get()) {
+            case V_SYMBOL:
+            case V_STRING:
+                return skipString(body);
+            case V_INTEGER:
+            case V_FACT:
+                body.position(body.position() + 4);
+                break;
+            case V_LONG:
+            case V_FLOAT:
+                body.position(body.position() + 8);
+                break;
+            case V_LIST: {
+                int size = body.getInt();
+                for (int i = 0; i < size; i++)
+                    skipValue(body);
+                break;
+            }
+            default:
+                break;
+        }
+        return body.position();
+    }
+
+    /**
+     * A fact as the journal encodes it: its template name and the
+     * encoding of each slot.
+     */
+    private static final class FactImage {
+        final byte[] m_name;
+        final byte[][] m_slots;
+
+        FactImage(byte[] name, byte[][] slots) {
+            m_name = name;
+            m_slots = slots;
+        }
+
+        byte[] toAssertRecord(int id) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(id);
+            data.write(m_name);
+            data.writeShort(m_slots.length);
+            for (int i = 0; i < m_slots.length; i++)
+                data.write(m_slots[i]);
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Writes a snapshot to a file with ordinary buffered I/O, and syncs
+     * it to the device when finished.
+     */
+    private static final class SnapshotWriter {
+        private final FileOutputStream m_stream;
+        private final DataOutputStream m_out;
+        private long m_size = HEADER_SIZE;
+
+        SnapshotWriter(File file, int sequence) throws IOException {
+            m_stream = new FileOutputStream(file);
+            m_out = new DataOutputStream(new BufferedOutputStream(m_stream, 1 << 16));
+            m_out.writeInt(MAGIC);
+            m_out.writeInt(VERSION);
+            m_out.writeInt(sequence);
+        }
+
+        void record(byte type, byte[] body, int offset, int length) throws IOException {
+            m_size += 5 + length;
+            if (m_size >= Integer.MAX_VALUE)
+                throw new IOException("Snapshot too large for a journal file");
+            m_out.writeByte(type);
+            m_out.writeInt(length);
+            m_out.write(body, offset, length);
+        }
+
+        void finish() throws IOException {
+            m_out.writeByte(END);
+            m_out.flush();
+            m_stream.getFD().sync();
+        }
+
+        void close() {
+            try {
+                m_out.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    // **********************************************************************
+    // Recovery
+    // **********************************************************************
+
+    /**
+     * Replay a journal into the given engine: the journal file, then any
+     * segments written after it that haven't been merged into it yet.
+     * Every template named in the journal must already be defined in the
+     * engine. Replayed facts receive new fact-ids from the engine;
+     * fact-id values stored in slots are translated accordingly. Rules
+     * are matched but not fired. Any journal attached to the engine is
+     * detached during replay and reattached afterwards.
+     *
+     * @param file a journal file
+     * @param engine the engine to restore working memory into
+     * @return the number of records replayed
+     * @throws JessException if the file is not a journal, or anything else goes wrong
+     */
+    public static int recover(File file, Rete engine) throws JessException {
+        List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+        try {
+            ByteBuffer base = map(file);
+            segments.add(base);
+            for (int i = base.getInt(8) + 1; segmentFile(file, i).exists(); i++)
+                segments.add(map(segmentFile(file, i)));
+        } catch (IOException ioe) {
+            throw new JessException("FactJournal.recover", "I/O error", ioe);
+        }
+
+        FactJournal attached = engine.getFactJournal();
+        engine.setFactJournal(null);
+        try {
+            synchronized (engine.getWorkingMemoryLock()) {
+                Map<Integer, Fact> facts = new HashMap<Integer, Fact>();
+                List<ForwardReferences> pending = new ArrayList<ForwardReferences>();
+                int count = 0;
+                for (ByteBuffer segment : segments)
+                    count += replay(segment, engine, facts, pending);
+                resolve(pending, facts, engine.getValueFactory(), engine);
+                return count;
+            }
+        } finally {
+            if (attached != null)
+                engine.setFactJournal(attached);
+        }
+    }
+
+    /**
+     * Map a journal file or segment, check its header, and position the
+     * buffer at the first record.
+     */
+    private static ByteBuffer map(File file) throws IOException, JessException {
+        ByteBuffer segment;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        if (segment.limit() < HEADER_SIZE || segment.getInt(0) != MAGIC)
+            throw new JessException("FactJournal.recover", "Not a fact journal:", file.getPath());
+        if (segment.getInt(4) != VERSION)
+            throw new JessException("FactJournal.recover", "Unsupported journal version", segment.getInt(4));
+        segment.position(HEADER_SIZE);
+        return segment;
+    }
+
+    private static int replay(ByteBuffer segment, Rete engine, Map<Integer, Fact> facts,
+                              List<ForwardReferences> pending) throws JessException {
+        Context context = engine.getGlobalContext();
+        ValueFactory factory = engine.getValueFactory();
+        int count = 0;
+        while (segment.remaining() >= 5) {
+            int start = segment.position();
+            byte type = segment.get();
+            if (type == END)
+                break;
+            int length = segment.getInt();
+            if (length < 0 || length > segment.remaining())
+                break;
+            ByteBuffer body = segment.slice();
+            body.limit(length);
+
+            // A snapshot may refer to facts that come later in the
+            // snapshot; those references are filled in once the run of
+            // assertions ends.
+            if (type != ASSERT)
+                resolve(pending, facts, factory, engine);
+
+            switch (type) {
+                case CLEAR:
+                    engine.removeAllFacts();
+                    facts.clear();
+                    break;
+                case ASSERT: {
+                    int id = body.getInt();
+                    Fact f = new Fact(readString(body), engine);
+                    int nSlots = body.getShort();
+                    ForwardReferences forward = new ForwardReferences(id, body.duplicate(), nSlots);
+                    for (int i = 0; i < nSlots; i++) {
+                        int before = forward.count;
+                        f.set(readValue(body, facts, factory, forward), i);
+                        if (forward.count > before)
+                            forward.slots.add(i);
+                    }
+                    Fact asserted = engine.assertFact(f, context);
+                    if (asserted == null)
+                        asserted = engine.findFactByFact(f);
+                    if (asserted != null) {
+                        facts.put(id, asserted);
+                        if (forward.count > 0) {
+                            forward.fact = asserted;
+                            pending.add(forward);
+                        }
+                    }
+                    break;
+                }
+                case RETRACT: {
+                    Fact f = facts.remove(body.getInt());
+                    if (f != null)
+                        engine.retract(f);
+                    break;
+                }
+                case MODIFY: {
+                    int id = body.getInt();
+                    Fact f = facts.get(id);
+                    int nSlots = body.getShort();
+                    String[] names = new String[nSlots];
+                    Value[] values = new Value[nSlots];
+                    for (int i = 0; i < nSlots; i++) {
+                        int index = body.getShort();
+                        values[i] = readValue(body, facts, factory, null);
+                        if (f != null)
+                            names[i] = f.getDeftemplate().getSlotName(index);
+                    }
+                    if (f != null) {
+                        Fact modified = engine.modify(f, names, values, context);
+                        if (modified == Fact.getNullFact())
+                            facts.remove(id);
+                    }
+                    break;
+                }
+                default:
+                    throw new JessException("FactJournal.recover", "Corrupt record at offset", start);
+            }
+            segment.position(start + 5 + length);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Read the slots of each pending fact again, now that every fact
+     * they might refer to has been asserted, and modify the slots that
+     * held forward references. A reference to a fact that never
+     * appears becomes nil, as it would have been when written.
+     */
+    private static void resolve(List<ForwardReferences> pending, Map<Integer, Fact> facts,
+                                ValueFactory factory, Rete engine) throws JessException {
+        if (pending.isEmpty())
+            return;
+        Context context = engine.getGlobalContext();
+        for (ForwardReferences forward : pending) {
+            if (facts.get(forward.id) != forward.fact)
+                continue;
+            Deftemplate template = forward.fact.getDeftemplate();
+            String[] names = new String[forward.slots.size()];
+            Value[] values = new Value[names.length];
+            for (int i = 0, j = 0; i < forward.nSlots; i++) {
+                Value v = readValue(forward.body, facts, factory, null);
+                if (j < names.length && forward.slots.get(j) == i) {
+                    names[j] = template.getSlotName(i);
+                    values[j++] = v;
+                }
+            }
+            Fact modified = engine.modify(forward.fact, names, values, context);
+            if (modified == Fact.getNullFact())
+                facts.remove(forward.id);
+        }
+        pending.clear();
+    }
+
+    private static String readString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getInt()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Value readValue(ByteBuffer body, Map<Integer, Fact> facts, ValueFactory factory,
+                                   ForwardReferences forward)
+            throws JessException {
+        byte tag = body.get();
+        switch (tag) {
+            case V_SYMBOL:
+                return factory.get(readString(body), RU.SYMBOL);
+            case V_STRING:
+                return factory.get(readString(body), RU.STRING);
+            case V_INTEGER:
+                return factory.get(body.getInt());
+            case V_LONG:
+                return factory.get(body.getLong());
+            case V_FLOAT:
+                return factory.get(body.getDouble(), RU.FLOAT);
+            case V_FACT: {
+                Fact f = facts.get(body.getInt());
+                if (f != null)
+                    return new FactIDValue(f);
+                if (forward == null)
+                    return Funcall.NIL;
+                // A unique placeholder, so that two facts waiting on
+                // different references are never taken for duplicates
+                ++forward.count;
+                return new Value(new Object());
+            }
+            case V_LIST: {
+                int size = body.getInt();
+                ValueVector vv = new ValueVector(size);
+                for (int i = 0; i < size; i++)
+                    vv.add(readValue(body, facts, factory, forward));
+                return new Value(vv, RU.LIST);
+            }
+            default:
+                return Funcall.NIL;
+        }
+    }
+
+    // A replayed fact whose slots refer to facts not yet replayed
+    private static class ForwardReferences {
+        final int id;
+        final ByteBuffer body;
+        final int nSlots;
+        final List<Integer> slots = new ArrayList<Integer>();
+        int count;
+        Fact fact;
+
+        ForwardReferences(int id, ByteBuffer body, int nSlots) {
+            this.id = id;
+            this.body = body;
+            this.nSlots = nSlots;
+        }
+    }
+
+    // Gives access to the record bytes without copying them
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package jess;
 
-import jess.xml.XMLVisitor;
+import jess.xml.FactListWriter;
 
 import java.io.*;
 import java.util.*;
@@ -23,6 +23,7 @@ class FactList implements Serializable {
 
     private int m_time = 0;
     private final LogicalSupport m_logicalSupport = new LogicalSupport(m_factsToRetract);
+    private transient FactJournal m_journal;
 
     private void processToken(int tag, Fact fact, Rete engine, Context context) throws JessException {
         synchronized (engine.getWorkingMemoryLock()) {
@@ -65,6 +66,23 @@ class FactList implements Serializable {
         m_factsToRetract.clear();
         m_logicalSupport.clear();
         m_nextFactId = 0;
+        if (m_journal != null)
+            m_journal.cleared();
+    }
+
+    FactJournal getJournal() {
+        return m_journal;
+    }
+
+    void setJournal(FactJournal journal) throws JessException {
+        m_journal = journal;
+        if (journal != null)
+            journal.attach(listFacts());
+    }
+
+    private void compactJournalIfNeeded() throws JessException {
+        if (m_journal != null)
+            m_journal.compactIfNeeded(m_table.size());
     }
 
     int getTime() {
@@ -95,29 +113,34 @@ class FactList implements Serializable {
     }
 
     void ppFacts(String name, Writer output, boolean inXML) throws IOException {
-        String line = System.getProperty("line.separator");
         if (inXML) {
-            output.write("<?xml version='1.0' encoding='US-ASCII'?>");
-            output.write(line);
-            output.write("<fact-list>");
-            output.write(line);
+            try {
+                FactListWriter writer = new FactListWriter(output);
+                writeFacts(name, writer);
+                writer.finish();
+            } catch (JessException je) {
+                IOException ioe = new IOException(je.getMessage());
+                ioe.initCause(je);
+                throw ioe;
+            }
+            return;
         }
 
+        String line = System.getProperty("line.separator");
         for (Iterator<Fact> e = listFacts(); e.hasNext();) {
             Fact f = (Fact) e.next();
             if (name == null || f.getName().equals(name)) {
-                if (inXML) {
-                    output.write(new XMLVisitor(f).toString());
-                } else {
-                    output.write(f.toString());
-                }
+                output.write(f.toString());
                 output.write(line);
             }
         }
+    }
 
-        if (inXML) {
-            output.write("</fact-list>");
-            output.write(line);            
+    void writeFacts(String name, FactListWriter writer) throws JessException {
+        for (Iterator<Fact> e = listFacts(); e.hasNext();) {
+            Fact f = (Fact) e.next();
+            if (name == null || f.getName().equals(name))
+                writer.writeFact(f);
         }
     }
 
@@ -185,6 +208,46 @@ class FactList implements Serializable {
         }
     }
 
+    int assertFacts(Collection<Fact> facts, Rete engine, Context context)
+            throws JessException {
+        return assertFacts(facts, engine, context, false, new BatchProgress());
+    }
+
+    /**
+     * Assert facts in order, keeping track in the progress object of
+     * how far the batch got, so that if a fact throws, the caller can
+     * tell which one it was and how many facts went in before it.
+     */
+    int assertFacts(Collection<Fact> facts, Rete engine, Context context,
+                    boolean check, BatchProgress progress)
+            throws JessException {
+        synchronized (engine.getWorkingMemoryLock()) {
+            try {
+                for (Iterator<Fact> it = facts.iterator(); it.hasNext(); ++progress.position) {
+                    Fact f = it.next();
+                    if (check)
+                        f.checkConstraints();
+                    if (_assert(f, engine, context) != null)
+                        ++progress.asserted;
+                }
+            } finally {
+                if (progress.asserted > 0)
+                    processPendingFacts(engine);
+            }
+            return progress.asserted;
+        }
+    }
+
+    /**
+     * How far a call to assertFacts got.
+     */
+    static class BatchProgress {
+        /** The index of the fact being asserted; after an exception, the one that threw */
+        int position;
+        /** The number of facts added to working memory */
+        int asserted;
+    }
+
     private Fact _assert(Fact f, Rete engine, Context context)
             throws JessException {
         synchronized (engine.getWorkingMemoryLock()) {
@@ -204,10 +267,17 @@ class FactList implements Serializable {
 
                 engine.broadcastEvent(JessEvent.FACT, f, context);
 
+                if (m_journal != null)
+                    m_journal.factAsserted(f);
+                Telemetry telemetry = engine.getTelemetry();
+                if (telemetry != null)
+                    telemetry.factEvent(Telemetry.FACT_ASSERTED, f);
+
                 m_table.put(f, f);
 
                 // Send it to the Rete network
                 processToken(RU.ADD, f, engine, engine.getGlobalContext().push());
+                compactJournalIfNeeded();
 
                 return f;
             } finally {
@@ -259,8 +329,14 @@ class FactList implements Serializable {
                 f = m_table.remove(f.getIcon());
                 engine.broadcastEvent(JessEvent.FACT | JessEvent.REMOVED, f, context);
                 if (f != null) {
+                    if (m_journal != null)
+                        m_journal.factRetracted(f);
+                    Telemetry telemetry = engine.getTelemetry();
+                    if (telemetry != null)
+                        telemetry.factEvent(Telemetry.FACT_RETRACTED, f);
                     m_logicalSupport.removeAllLogicalSupportFor(f);
                     processToken(RU.REMOVE, f, engine, engine.getGlobalContext().push());
+                    compactJournalIfNeeded();
                 }
             } finally {
                 engine.commitActivations();
@@ -307,14 +383,39 @@ class FactList implements Serializable {
         return fact;
     }
 
-    private Fact prepareToModifyRegularFact(Fact fact, String[] slotNames, Rete engine, Context context)
+    Fact modify(Fact fact, int[] slotIndexes, Value[] slotValues, Context context, Rete engine)
+            throws JessException {
+
+        if (slotIndexes.length != slotValues.length)
+            throw new JessException("modify",
+                                    "Wrong number of values, expected " + slotIndexes.length + ", got",
+                                    slotValues.length);
+        if (fact.getShadowMode() != Fact.NO) {
+            // Definstanced objects are updated by property name
+            Deftemplate deft = fact.getDeftemplate();
+            String[] slotNames = new String[slotIndexes.length];
+            for (int i = 0; i < slotIndexes.length; i++)
+                slotNames[i] = deft.getSlotName(slotIndexes[i]);
+            return modify(fact, slotNames, slotValues, context, engine);
+        }
+
+        synchronized (engine.getWorkingMemoryLock()) {
+            try {
+                return modifyRegularFact(fact, slotIndexes, slotValues, engine, context);
+            } finally {
+                engine.commitActivations();
+            }
+        }
+    }
+
+    private Fact prepareToModifyRegularFact(Fact fact, BitSet modifiedSlots, Rete engine, Context context)
             throws JessException {
 
         synchronized (engine.getWorkingMemoryLock()) {
             Context newContext = context.push();
             if (fact.getDeftemplate().isSlotSpecific()) {
                 newContext.setSlotSpecificModifiedFact(fact);
-                newContext.setModifiedSlots(slotNames);
+                newContext.setModifiedSlots(modifiedSlots);
             }
             processToken(RU.MODIFY_REMOVE, fact, engine, newContext);
             fact = m_table.remove(fact);
@@ -323,24 +424,37 @@ class FactList implements Serializable {
         }
     }
 
-    private Fact finishModifyRegularFact(Fact fact, Rete engine, String[] slotNames, Context context)
+    private Fact finishModifyRegularFact(Fact fact, Rete engine, int[] slotIndexes, BitSet modifiedSlots,
+                                         Context context)
             throws JessException {
 
         synchronized (engine.getWorkingMemoryLock()) {
             engine.broadcastEvent(JessEvent.FACT | JessEvent.MODIFIED, fact, context);
             m_logicalSupport.factAsserted(context, fact, false);
             if (engine.doPreAssertionProcessing(fact) == 0) {
+                if (m_journal != null)
+                    m_journal.factModified(fact, slotIndexes);
+                Telemetry telemetry = engine.getTelemetry();
+                if (telemetry != null)
+                    telemetry.factEvent(Telemetry.FACT_MODIFIED, fact);
                 m_table.put(fact, fact);
                 Context newContext = context.push();
                 if (fact.getDeftemplate().isSlotSpecific()) {
                     newContext.setSlotSpecificModifiedFact(fact);
-                    newContext.setModifiedSlots(slotNames);
+                    newContext.setModifiedSlots(modifiedSlots);
                 }
                 processToken(RU.MODIFY_ADD, fact, engine, newContext);
+                compactJournalIfNeeded();
                 processPendingFacts(engine);
                 return fact;
-            } else
+            } else {
+                if (m_journal != null)
+                    m_journal.factRetracted(fact);
+                Telemetry telemetry = engine.getTelemetry();
+                if (telemetry != null)
+                    telemetry.factEvent(Telemetry.FACT_RETRACTED, fact);
                 return Fact.getNullFact();
+            }
         }
     }
 
@@ -348,35 +462,61 @@ class FactList implements Serializable {
             throws JessException {
 
         synchronized (engine.getWorkingMemoryLock()) {
-            Fact fact = m_table.get(input.getIcon());
-            if (fact == null) {
-                throw new JessException("modify", "Fact object not in working memory", input.toStringWithParens());
-            }
+            Fact fact = findRegularFact(input);
+            int[] slotIndexes = new int[slotNames.length];
+            for (int i = 0; i < slotNames.length; i++)
+                slotIndexes[i] = fact.findSlot(slotNames[i]);
+            return modifyRegularFact(fact, slotIndexes, slotValues, engine, context);
+        }
+    }
 
-            List<String> nameList = new ArrayList<String>();
-            List<Value> valueList = new ArrayList<Value>();
+    Fact modifyRegularFact(Fact input, int[] slotIndexes, Value[] slotValues, Rete engine, Context context)
+            throws JessException {
+
+        synchronized (engine.getWorkingMemoryLock()) {
+            Fact fact = findRegularFact(input);
+            int nSlots = fact.getDeftemplate().getNSlots();
+
+            int[] changed = new int[slotIndexes.length];
+            Value[] values = new Value[slotIndexes.length];
+            int nChanged = 0;
+            BitSet modifiedSlots = new BitSet(nSlots);
             for (int i=0; i < slotValues.length; i++) {
+                int index = slotIndexes[i];
+                if (index < 0 || index >= nSlots)
+                    throw new JessException("modify", "Bad slot index for template " +
+                                            fact.getDeftemplate().getName() + ":", index);
                 Value v = slotValues[i].resolveValue(context);
-                if (!fact.getSlotValue(slotNames[i]).equals(v)) {
-                    nameList.add(slotNames[i]);
-                    valueList.add(v);
+                if (!fact.get(index).equals(v)) {
+                    changed[nChanged] = index;
+                    values[nChanged++] = v;
+                    modifiedSlots.set(index);
                 }
             }
-            if (nameList.size() == 0)
+            if (nChanged == 0)
                 return fact;
-            slotNames = nameList.toArray(new String[nameList.size()]);
-            fact = prepareToModifyRegularFact(fact, slotNames, engine, context);
+            if (nChanged < changed.length)
+                changed = Arrays.copyOf(changed, nChanged);
+            fact = prepareToModifyRegularFact(fact, modifiedSlots, engine, context);
             try {
-                for (int i = 0; i < nameList.size(); i++) {
-                    fact.setSlotValue(nameList.get(i), valueList.get(i));
+                for (int i = 0; i < nChanged; i++) {
+                    fact.setSlotValue(changed[i], values[i]);
                 }
             } finally {
-                fact = finishModifyRegularFact(fact, engine, slotNames, context);
+                fact = finishModifyRegularFact(fact, engine, changed, modifiedSlots, context);
             }
             return fact;
         }
     }
 
+    private Fact findRegularFact(Fact input) throws JessException {
+        Fact fact = m_table.get(input.getIcon());
+        if (fact == null) {
+            throw new JessException("modify", "Fact object not in working memory", input.toStringWithParens());
+        }
+        return fact;
+    }
+
     private Fact modifyDefinstancedObject(Fact fact, String[] slotNames, Value[] slotValues, Rete engine,
                                           Context context)
             throws JessException {
@@ -0,0 +1,440 @@
+package jess;
+
+import jess.tools.TextReader;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server that accepts facts from other processes over TCP and asserts
+ * them into a Rete object. Clients send UTF-8 text, one fact per line, in
+ * the same syntax used by <tt>assert</tt>:
+ * <pre>
+ * (reading (sensor t-12) (value 17.5))
+ * (heartbeat t-12 1377012345)
+ * </pre>
+ * Blank lines and lines starting with a semicolon are ignored. Nothing is
+ * sent back to the client.
+ * <p/>
+ * The sockets are serviced by one or more I/O threads, each with its own
+ * selector, and each line is parsed into a Fact on the I/O thread that
+ * read it, so parsing never waits for the engine. Parsed facts are queued
+ * for a single assert thread, which takes everything that has arrived
+ * since its last pass -- up to the batch size -- and asserts it with one
+ * call to {@link Rete#assertFacts}, taking the working memory lock once
+ * per batch. When the queue is full, the I/O threads stop reading until
+ * there's room, so a client that sends faster than the engine can keep up
+ * is slowed down by TCP flow control rather than by using more memory.
+ * <p/>
+ * A line that can't be parsed or asserted is reported on the engine's
+ * WSTDERR router and counted; the rest of the connection is unaffected.
+ * Unless another address is given, the server listens only on the
+ * loopback interface.
+ * <pre>
+ * FactServer server = new FactServer(engine, 9123);
+ * ...
+ * server.close();
+ * </pre>
+ * The "fact-server" function starts a server from Jess code.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public class FactServer {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_MAX_LINE = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Object STOP = new Object();
+
+    private final Rete m_engine;
+    private final ServerSocketChannel m_server;
+    private final IOThread[] m_io;
+    private final Thread m_asserter;
+    private final BlockingQueue<Object> m_queue;
+    private final int m_batchSize;
+    private final AtomicLong m_received = new AtomicLong();
+    private final AtomicLong m_asserted = new AtomicLong();
+    private final AtomicLong m_rejected = new AtomicLong();
+    private final AtomicLong m_batches = new AtomicLong();
+    private int m_nextIO;
+    private volatile boolean m_closed;
+
+    /**
+     * Start a server on the given port of the loopback interface, with one
+     * I/O thread.
+     *
+     * @param engine the Rete object to assert facts into
+     * @param port   the port to listen on, or 0 to choose any free port
+     * @throws JessException if the server can't be started
+     */
+    public FactServer(Rete engine, int port) throws JessException {
+        this(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Start a server on the given address.
+     *
+     * @param engine    the Rete object to assert facts into
+     * @param address   the address to listen on
+     * @param ioThreads the number of threads to read and parse with
+     * @param batchSize the most facts to assert at once
+     * @throws JessException if the server can't be started
+     */
+    public FactServer(Rete engine, InetSocketAddress address, int ioThreads, int batchSize)
+            throws JessException {
+        m_engine = engine;
+        m_batchSize = Math.max(1, batchSize);
+        m_queue = new ArrayBlockingQueue<Object>(4 * m_batchSize);
+        m_io = new IOThread[Math.max(1, ioThreads)];
+        try {
+            m_server = ServerSocketChannel.open();
+            m_server.socket().setReuseAddress(true);
+            m_server.socket().bind(address);
+            m_server.configureBlocking(false);
+            for (int i = 0; i < m_io.length; i++)
+                m_io[i] = new IOThread("Jess fact server I/O " + i);
+            m_server.register(m_io[0].m_selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ioe) {
+            throw new JessException("FactServer", "Can't listen on " + address, ioe);
+        }
+
+        m_asserter = new Thread(new Asserter(), "Jess fact server");
+        m_asserter.setDaemon(true);
+        m_asserter.start();
+        for (int i = 0; i < m_io.length; i++)
+            m_io[i].start();
+    }
+
+    /**
+     * Return the port this server is listening on.
+     *
+     * @return the local port number
+     */
+    public int getPort() {
+        return m_server.socket().getLocalPort();
+    }
+
+    /**
+     * Return the number of facts parsed so far, including any not yet asserted.
+     *
+     * @return the number of facts received
+     */
+    public long getReceivedCount() {
+        return m_received.get();
+    }
+
+    /**
+     * Return the number of facts added to working memory so far. Facts that
+     * duplicate ones already in working memory aren't counted.
+     *
+     * @return the number of facts asserted
+     */
+    public long getAssertedCount() {
+        return m_asserted.get();
+    }
+
+    /**
+     * Return the number of lines that couldn't be parsed or asserted.
+     *
+     * @return the number of rejected lines
+     */
+    public long getRejectedCount() {
+        return m_rejected.get();
+    }
+
+    /**
+     * Return the number of calls made to {@link Rete#assertFacts} so far.
+     *
+     * @return the number of batches asserted
+     */
+    public long getBatchCount() {
+        return m_batches.get();
+    }
+
+    /**
+     * Stop accepting connections, close all the client connections, and wait
+     * until every fact already received has been asserted.
+     *
+     * @throws JessException if interrupted while waiting
+     */
+    public void close() throws JessException {
+        synchronized (this) {
+            if (m_closed)
+                return;
+            m_closed = true;
+        }
+        try {
+            for (int i = 0; i < m_io.length; i++) {
+                m_io[i].m_selector.wakeup();
+                m_io[i].join();
+            }
+            m_queue.put(STOP);
+            m_asserter.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new JessException("FactServer.close", "Interrupted", ie);
+        } finally {
+            try {
+                m_server.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void reject(String message, Throwable t) {
+        m_rejected.incrementAndGet();
+        report(message, t);
+    }
+
+    private void report(String message, Throwable t) {
+        PrintWriter err = m_engine.getErrStream();
+        synchronized (err) {
+            err.println("Jess fact server: " + message);
+            if (t != null)
+                err.println(t.toString());
+            err.flush();
+        }
+    }
+
+    /**
+     * Reads from the sockets registered with one selector and parses what
+     * it reads.
+     */
+    private class IOThread extends Thread {
+        final Selector m_selector;
+        final ConcurrentLinkedQueue<SocketChannel> m_pending = new ConcurrentLinkedQueue<SocketChannel>();
+        private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final TextReader m_tis = new TextReader(true);
+        private final Jesp m_jesp = new Jesp(m_tis, m_engine);
+
+        IOThread(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            m_selector = Selector.open();
+            m_jesp.setFileName("<fact server>");
+        }
+
+        public void run() {
+            try {
+                while (!m_closed) {
+                    m_selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> it = m_selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        else if (key.isReadable())
+                            read(key);
+                    }
+                }
+            } catch (IOException ioe) {
+                if (!m_closed)
+                    report("I/O thread stopped", ioe);
+            } catch (InterruptedException ie) {
+                // Shutting down
+            } finally {
+                for (Iterator<SelectionKey> it = m_selector.keys().iterator(); it.hasNext();) {
+                    Channel channel = it.next().channel();
+                    if (channel instanceof SocketChannel)
+                        closeQuietly(channel);
+                }
+                registerPending();
+                closeQuietly(m_selector);
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = m_server.accept()) != null) {
+                channel.configureBlocking(false);
+                IOThread io;
+                synchronized (FactServer.this) {
+                    io = m_io[m_nextIO];
+                    m_nextIO = (m_nextIO + 1) % m_io.length;
+                }
+                if (io == this) {
+                    channel.register(m_selector, SelectionKey.OP_READ, new LineBuffer());
+                } else {
+                    io.m_pending.add(channel);
+                    io.m_selector.wakeup();
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = m_pending.poll()) != null) {
+                if (m_closed) {
+                    closeQuietly(channel);
+                    continue;
+                }
+                try {
+                    channel.register(m_selector, SelectionKey.OP_READ, new LineBuffer());
+                } catch (IOException ioe) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws InterruptedException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            LineBuffer lines = (LineBuffer) key.attachment();
+            int n;
+            try {
+                m_buffer.clear();
+                n = channel.read(m_buffer);
+            } catch (IOException ioe) {
+                n = -1;
+            }
+            if (n > 0) {
+                m_buffer.flip();
+                if (!lines.append(m_buffer))
+                    reject("Line longer than " + DEFAULT_MAX_LINE + " bytes; closing connection", null);
+                else
+                    return;
+            } else if (n == 0) {
+                return;
+            } else {
+                lines.finish();
+            }
+            key.cancel();
+            closeQuietly(channel);
+        }
+
+        private void parse(String line) throws InterruptedException {
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == ';')
+                return;
+            Fact fact;
+            try {
+                m_tis.clear();
+                m_jesp.clear();
+                m_tis.appendText(line);
+                fact = m_jesp.parseFact(m_engine, m_jesp.getTokenStream());
+            } catch (JessException je) {
+                reject("can't parse " + line, je);
+                return;
+            }
+            m_received.incrementAndGet();
+            m_queue.put(fact);
+        }
+
+        /**
+         * Collects the bytes of a partial line between reads.
+         */
+        private class LineBuffer {
+            private byte[] m_bytes = new byte[256];
+            private int m_length;
+
+            // Returns false if a line is too long
+            boolean append(ByteBuffer buffer) throws InterruptedException {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        parse(new String(m_bytes, 0, m_length, UTF8));
+                        m_length = 0;
+                        continue;
+                    }
+                    if (m_length == m_bytes.length) {
+                        if (m_length >= DEFAULT_MAX_LINE)
+                            return false;
+                        byte[] bytes = new byte[Math.min(2 * m_length, DEFAULT_MAX_LINE)];
+                        System.arraycopy(m_bytes, 0, bytes, 0, m_length);
+                        m_bytes = bytes;
+                    }
+                    m_bytes[m_length++] = b;
+                }
+                return true;
+            }
+
+            void finish() throws InterruptedException {
+                if (m_length > 0)
+                    parse(new String(m_bytes, 0, m_length, UTF8));
+                m_length = 0;
+            }
+        }
+    }
+
+    /**
+     * Asserts queued facts, as many as are waiting at a time.
+     */
+    private class Asserter implements Runnable {
+        public void run() {
+            Context context = m_engine.getGlobalContext();
+            List<Object> arrived = new ArrayList<Object>(m_batchSize);
+            List<Fact> batch = new ArrayList<Fact>(m_batchSize);
+            try {
+                while (true) {
+                    arrived.add(m_queue.take());
+                    m_queue.drainTo(arrived, m_batchSize - 1);
+                    boolean stop = false;
+                    for (int i = 0; i < arrived.size(); i++) {
+                        Object o = arrived.get(i);
+                        if (o == STOP)
+                            stop = true;
+                        else
+                            batch.add((Fact) o);
+                    }
+                    if (!batch.isEmpty())
+                        assertBatch(batch, context);
+                    arrived.clear();
+                    batch.clear();
+                    if (stop)
+                        return;
+                }
+            } catch (InterruptedException ie) {
+                // Shutting down
+            }
+        }
+
+        private void assertBatch(List<Fact> batch, Context context) {
+            m_batches.incrementAndGet();
+            List<Fact> rest = batch;
+            while (!rest.isEmpty()) {
+                FactList.BatchProgress progress = new FactList.BatchProgress();
+                try {
+                    m_engine.assertFacts(rest, context, progress);
+                    m_asserted.addAndGet(progress.asserted);
+                    return;
+                } catch (JessException | RuntimeException e) {
+                    // A RuntimeException, from a rule or a Java object, is
+                    // treated the same way, so that it can't kill this
+                    // thread and leave the I/O threads blocked on the queue
+                    m_asserted.addAndGet(progress.asserted);
+                    // Skip the fact that failed and carry on from there,
+                    // so one bad fact doesn't lose the rest
+                    if (progress.position >= rest.size()) {
+                        report("error while processing batch", e);
+                        return;
+                    }
+                    reject("can't assert " + rest.get(progress.position), e);
+                    rest = rest.subList(progress.position + 1, rest.size());
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -198,6 +198,7 @@ public class Funcall extends ValueVector implements Serializable, Visitable {
             addIntrinsic(new UnDefrule());
             addIntrinsic(new UnDeffacts());
             addIntrinsic(new Batch());
+            addIntrinsic(new ParallelLoader());
             addIntrinsic(new Implement());
             addIntrinsic(new Lambda());
             addIntrinsic(new Require());
@@ -309,6 +310,32 @@ public class Funcall extends ValueVector implements Serializable, Visitable {
         return f;
     }
 
+    /**
+     * Returns a deep copy of this Funcall that isn't bound to any
+     * engine's function table, so that it can be used in another engine.
+     */
+    Funcall copyUnbound() throws JessException {
+        Funcall f = new Funcall(size());
+        for (int i = 0; i < size(); i++)
+            f.add(copyUnbound(get(i)));
+        return f;
+    }
+
+    static Value copyUnbound(Value v) throws JessException {
+        if (v instanceof FuncallValue)
+            return new FuncallValue(v.funcallValue(null).copyUnbound());
+
+        else if (v.type() == RU.LIST && v.getClass() == Value.class) {
+            ValueVector list = v.listValue(null);
+            ValueVector copy = new ValueVector(list.size());
+            for (int i = 0; i < list.size(); i++)
+                copy.add(copyUnbound(list.get(i)));
+            return new Value(copy, RU.LIST);
+
+        } else
+            return v;
+    }
+
     /**
      * Makes the argument into a copy of this Funcall.
      *
@@ -364,6 +391,14 @@ public class Funcall extends ValueVector implements Serializable, Visitable {
         return m_function.getFunction();
     }
 
+    /**
+     * Returns the Userfunction this Funcall is currently bound to, or null if it
+     * hasn't been bound to one yet.
+     */
+    Userfunction getResolvedFunction() {
+        return m_function == null ? null : m_function.getFunction();
+    }
+
     private void resolve(Rete engine) throws JessException {
         if (m_function == null) {
             String name = get(0).stringValue(null);
@@ -17,6 +17,7 @@ public abstract class HasLHS extends Node
     String m_docstring = "";
     private ArrayList m_nodes = new ArrayList();
     private Map m_bindings = new HashMap();
+    private transient volatile BindingPlan m_bindingPlan;
     private Group m_CEs;
     private int m_nodeIndexHash = 0;
     private StringBuffer m_compilationTrace;
@@ -114,6 +115,7 @@ public abstract class HasLHS extends Node
             throws JessException {
         Group CEs = m_CEs;
         m_bindings = new HashMap();
+        m_bindingPlan = null;
         m_CEs = new Group(Group.AND);
 
         addCE(ce, engine);
@@ -477,6 +479,7 @@ public abstract class HasLHS extends Node
                             int subidx, int type){
         m_bindings.put(name,
                        new BindingValue(name, patt, factidx, type, subidx, RU.FACT));
+        m_bindingPlan = null;
     }
 
     Map getBindings() {
@@ -523,51 +526,126 @@ public abstract class HasLHS extends Node
             else if (name.startsWith(Tokenizer.BLANK_PREFIX))
                 it.remove();            
         }
+        m_bindingPlan = new BindingPlan(getBindings());
     }
 
     void ready(Token fact_input, Context c) throws JessException {
+        BindingPlan plan = m_bindingPlan;
+        if (plan == null)
+            m_bindingPlan = plan = new BindingPlan(getBindings());
 
-        Fact fact;
-        // set up the variable table
-        for (Iterator e = getBindings().values().iterator(); e.hasNext();) {
-            BindingValue b = (BindingValue) e.next();
+        if (!plan.m_resolved)
+            m_bindingPlan = plan = plan.resolve(fact_input, getBindings());
 
-            // You can get these from "not" patterns
-            if (b.getFactNumber() > fact_input.size()) {
-                e.remove();
-                continue;
-            }
-
-            // Variables need info from a fact
-            Value val;
-            fact = fact_input.fact(b.getFactNumber());
+        plan.bind(fact_input, c);
+    }
 
-            // if this is a "not" CE, skip it
-            if (fact.getDeftemplate().equals(Deftemplate.getNullTemplate())) {
-                e.remove();
-                continue;
+    /**
+     * The precomputed list of variables to bind when this construct
+     * fires: for each variable, the index of the fact in the token, the
+     * slot and subindex to read, and the name to bind. The table is
+     * built from the binding map once compilation is finished. Which
+     * variables can't be bound (those from "not" patterns and those
+     * defined inside an "accumulate") depends only on the shape of the
+     * activating token, so those are dropped the first time the
+     * construct fires; after that, firing is a straight loop over the
+     * arrays.
+     * <p/>
+     * The values are still stored in the Context by name. The right-hand
+     * side, and everything it calls (Funcalls, deffunctions, the
+     * debugger, user code that calls {@link Context#getVariable}), looks
+     * variables up by name, so there's no indexed frame to fill.
+     */
+    static final class BindingPlan {
+        private final String[] m_names;
+        private final int[] m_facts, m_slots, m_subIndexes;
+        private final boolean m_resolved;
+
+        BindingPlan(Map bindings) {
+            int n = bindings.size();
+            m_names = new String[n];
+            m_facts = new int[n];
+            m_slots = new int[n];
+            m_subIndexes = new int[n];
+            int i = 0;
+            for (Iterator it = bindings.values().iterator(); it.hasNext(); ++i) {
+                BindingValue b = (BindingValue) it.next();
+                m_names[i] = b.getName();
+                m_facts[i] = b.getFactNumber();
+                m_slots[i] = b.getSlotIndex();
+                m_subIndexes[i] = b.getSubIndex();
             }
+            m_resolved = false;
+        }
 
-            if (b.getSlotIndex() == RU.PATTERN) {
-                val = new FactIDValue(fact.getIcon());
-            } else {
-                // Variables defined in an "accumulate" aren't available, except for the accumulated value
-                if (fact.getDeftemplate().equals(Deftemplate.getAccumTemplate())) {
-                    if (b.getSlotIndex() != 0 || b.getSubIndex() != -1) {
-                        e.remove();
-                        continue;
-                    }
+        private BindingPlan(BindingPlan plan, boolean[] keep, int n) {
+            m_names = new String[n];
+            m_facts = new int[n];
+            m_slots = new int[n];
+            m_subIndexes = new int[n];
+            for (int i = 0, j = 0; i < keep.length; ++i) {
+                if (keep[i]) {
+                    m_names[j] = plan.m_names[i];
+                    m_facts[j] = plan.m_facts[i];
+                    m_slots[j] = plan.m_slots[i];
+                    m_subIndexes[j] = plan.m_subIndexes[i];
+                    ++j;
                 }
+            }
+            m_resolved = true;
+        }
 
-                if (b.getSubIndex() == -1) {
-                    val = fact.get(b.getSlotIndex());
+        /**
+         * Returns a plan without the variables that can't be bound
+         * from tokens shaped like this one, and removes those variables
+         * from the binding map.
+         */
+        BindingPlan resolve(Token fact_input, Map bindings) {
+            boolean[] keep = new boolean[m_names.length];
+            int n = 0;
+            for (int i = 0; i < m_names.length; ++i) {
+                // You can get these from "not" patterns
+                if (m_facts[i] > fact_input.size()) {
+                    // drop it
                 } else {
-                    ValueVector vv = fact.get(b.getSlotIndex()).listValue(c);
-                    val = vv.get(b.getSubIndex());
+                    Deftemplate template = fact_input.fact(m_facts[i]).getDeftemplate();
+                    // if this is a "not" CE, skip it
+                    if (template.equals(Deftemplate.getNullTemplate())) {
+                        // drop it
+                    }
+                    // Variables defined in an "accumulate" aren't available, except for the accumulated value
+                    else if (m_slots[i] != RU.PATTERN &&
+                            template.equals(Deftemplate.getAccumTemplate()) &&
+                            (m_slots[i] != 0 || m_subIndexes[i] != -1)) {
+                        // drop it
+                    } else {
+                        keep[i] = true;
+                        ++n;
+                    }
                 }
+                if (!keep[i]) {
+                    synchronized (bindings) {
+                        bindings.remove(m_names[i]);
+                    }
+                }
+            }
+            return new BindingPlan(this, keep, n);
+        }
 
+        void bind(Token fact_input, Context c) throws JessException {
+            String[] names = m_names;
+            int[] facts = m_facts, slots = m_slots, subIndexes = m_subIndexes;
+            for (int i = 0; i < names.length; ++i) {
+                Fact fact = fact_input.fact(facts[i]);
+                Value val;
+                if (slots[i] == RU.PATTERN)
+                    val = new FactIDValue(fact.getIcon());
+                else if (subIndexes[i] == -1)
+                    val = fact.get(slots[i]);
+                else
+                    val = fact.get(slots[i]).listValue(c).get(subIndexes[i]);
+                c.setVariable(names[i], val);
             }
-            c.setVariable(b.getName(), val);
         }
     }
 
@@ -20,6 +20,27 @@ public class HashCodeComputer {
         m_nonValueClasses.add(Collection.class);
     }
 
+    // Bumped whenever m_nonValueClasses changes; cached verdicts from
+    // an earlier generation are recomputed
+    private static volatile int s_generation;
+
+    private static final ClassValue<Verdict> s_verdicts = new ClassValue<Verdict>() {
+        protected Verdict computeValue(Class<?> type) {
+            int generation = s_generation;
+            return new Verdict(isValueClass(type), generation);
+        }
+    };
+
+    private static final class Verdict {
+        final boolean m_isValue;
+        final int m_generation;
+
+        Verdict(boolean isValue, int generation) {
+            m_isValue = isValue;
+            m_generation = generation;
+        }
+    }
+
     /**
      * Return a hashCode value for an object. If the argument is a "value object", the object's hashCode() is called.
      * If the argument is not, then a constant value is returned. This effectively means that hashing on non-value objects
@@ -45,8 +66,18 @@ public class HashCodeComputer {
      * @return true if the object is a value object
      */
     public static boolean isValueObject(Object o) {
+        Class<?> type = o.getClass();
+        Verdict verdict = s_verdicts.get(type);
+        if (verdict.m_generation != s_generation) {
+            s_verdicts.remove(type);
+            verdict = s_verdicts.get(type);
+        }
+        return verdict.m_isValue;
+    }
+
+    private static boolean isValueClass(Class<?> type) {
         for (Class clazz: m_nonValueClasses) {
-            if (clazz.isAssignableFrom(o.getClass()))
+            if (clazz.isAssignableFrom(type))
                 return false;
         }
         return true;
@@ -71,6 +102,7 @@ public class HashCodeComputer {
                 if (!m_nonValueClasses.contains(aClass))
                     m_nonValueClasses.add(aClass);
             }
+            ++s_generation;
         }
     }
 }
@@ -1,8 +1,7 @@
 package jess;
 
-import jess.xml.JessSAXParser;
-import jess.xml.JessSAXHandler;
-import org.xml.sax.InputSource;
+import jess.xml.FactListReader;
+import jess.xml.FactListWriter;
 
 import java.io.*;
 import java.net.URL;
@@ -82,7 +81,7 @@ class Printout implements Userfunction, Serializable {
                                     "printout: bad router",
                                     routerName);
 
-        StringBuffer sb = new StringBuffer(100);
+        StringBuilder sb = new StringBuilder(100);
         for (int i = 2; i < vv.size(); i++) {
             Value v = vv.get(i).resolveValue(context);
             switch (v.type()) {
@@ -122,7 +121,8 @@ class Printout implements Userfunction, Serializable {
             os.write(sb.toString());
             if (m_multithreadedIO)
                 PrintThread.getPrintThread().assignWork(os);
-            else
+            else if (!(os instanceof AsyncWriter))
+                // An AsyncWriter's drain thread decides when to flush
                 os.flush();
         } catch (IOException ioe) {
             throw new JessException("printout", "I/O Exception", ioe);
@@ -280,7 +280,7 @@ class LoadFacts implements Userfunction, Serializable {
         // ###
         try {
             if (engine.getDocumentBase() == null)
-                fis = new FileReader(filename);
+                fis = new InputStreamReader(new FileInputStream(filename), Batch.defaultCharset());
             else {
                 URL url = new URL(engine.getDocumentBase(),
                                   filename);
@@ -304,12 +304,30 @@ class LoadFacts implements Userfunction, Serializable {
         PushbackReader reader = new PushbackReader(fis);
         try {
             if (Batch.isXMLDocument(reader)) {
-                JessSAXParser parser = new JessSAXParser(engine, JessSAXHandler.FACTLIST);
-                parser.parse(new InputSource(reader));
+                FactListReader facts = new FactListReader(engine);
+                try {
+                    File file = new File(filename);
+                    if (engine.getDocumentBase() == null && file.isFile()) {
+                        // Reopen as bytes so the document's declared encoding is honored
+                        reader.close();
+                        InputStream in = new FileInputStream(file);
+                        try {
+                            facts.read(in);
+                        } finally {
+                            in.close();
+                        }
+                    } else {
+                        facts.read(reader);
+                    }
+                } catch (JessException je) {
+                    je.setFilename(filename);
+                    throw je;
+                }
                 return Funcall.TRUE;
 
             } else {
-                Jesp jesp = new Jesp(reader, context.getEngine());
+                Tokenizer tokenizer = Batch.openTokenizer(engine, filename, Batch.defaultCharset(), reader);
+                Jesp jesp = new Jesp(tokenizer, engine);
                 jesp.setFileName(filename);
                 return jesp.loadFacts(context);
             }
@@ -380,11 +398,11 @@ class SaveFactsXML implements Userfunction, Serializable {
             throw new JessException("save-facts-xml", "Only one template name argument is allowed, you gave", vv.size()-2);
         }
 
-        Writer f;
+        OutputStream f;
         Rete engine = context.getEngine();
         if (engine.getDocumentBase() == null) {
             try {
-                f = new FileWriter(vv.get(1).stringValue(context));
+                f = new FileOutputStream(vv.get(1).stringValue(context));
             } catch (IOException t) {
                 throw new JessException(getName(), "I/O Exception", t);
             }
@@ -396,28 +414,27 @@ class SaveFactsXML implements Userfunction, Serializable {
                                 vv.get(1).stringValue(context));
                 URLConnection urlc = url.openConnection();
                 urlc.setDoOutput(true);
-                f = new OutputStreamWriter(urlc.getOutputStream());
+                f = urlc.getOutputStream();
 
             } catch (Exception t) {
                 throw new JessException(getName(), "Network error", t);
             }
         }
 
+        FactListWriter writer;
         try {
+            writer = new FactListWriter(f);
+        } catch (JessException je) {
             try {
-                // ###
-                if (vv.size() > 2) {
-                    engine.ppFacts(vv.get(2).stringValue(context), f, true);
-
-                } else {
-                    engine.ppFacts(f, true);
-                }
-            } finally {
                 f.close();
+            } catch (IOException ignore) {
             }
-
-        } catch (IOException ioe) {
-            throw new JessException(getName(), "I/O Exception", ioe);
+            throw je;
+        }
+        try {
+            engine.writeFacts(vv.size() > 2 ? vv.get(2).stringValue(context) : null, writer);
+        } finally {
+            writer.close();
         }
         return Funcall.TRUE;
     }
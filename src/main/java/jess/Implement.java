@@ -2,6 +2,8 @@ package jess;
 
 import java.io.Serializable;
 import java.lang.reflect.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Lets you implement any interface from Jess.
@@ -65,13 +67,24 @@ class Implement implements Userfunction, Serializable {
     }
 }
 
+/**
+ * Forwards calls on an "implement" proxy to a Jess function. Everything
+ * that depends only on the interface method -- the name symbols, how to
+ * convert each argument and the result -- is worked out on the first call
+ * to that method and reused after that.
+ */
 class IH implements InvocationHandler {
-    private Userfunction m_function;
-    private Context m_context;
+    private final Userfunction m_function;
+    private final Context m_context;
+    private final Value m_functionName;
+    private final Map<Method, MethodCall> m_calls = new ConcurrentHashMap<Method, MethodCall>();
+    // Not volatile: a MethodCall's fields are final, so a stale read only costs a lookup
+    private MethodCall m_last;
 
-    IH(Userfunction theFunction, Context theContext) {
+    IH(Userfunction theFunction, Context theContext) throws JessException {
         m_function = theFunction;
         m_context = theContext;
+        m_functionName = new Value(theFunction.getName(), RU.SYMBOL);
     }
 
     public Object invoke(Object proxy,
@@ -79,25 +92,112 @@ class IH implements InvocationHandler {
                          Object[] args)
             throws Throwable {
 
-        ValueVector vv = new ValueVector();
-        vv.add(new Value(m_function.getName(), RU.SYMBOL));
-        vv.add(new Value(method.getName(), RU.SYMBOL));
-
-        if (args != null) {
-            for (int i=0; i<args.length; ++i) {
-                Object obj = args[i];
-                Class clazz = Object.class;
-                if (obj != null)
-                    clazz = obj.getClass();
-                vv.add(RU.objectToValue(clazz, obj));
+        // A proxy class passes the same Method object on every call, so
+        // one-element caching handles single-method interfaces like
+        // Comparator without a map lookup.
+        MethodCall call = m_last;
+        if (call == null || call.m_method != method) {
+            call = m_calls.get(method);
+            if (call == null) {
+                call = new MethodCall(method, m_functionName);
+                m_calls.put(method, call);
             }
+            m_last = call;
         }
-        Value result = m_function.call(vv, m_context);
-        Class returnType = method.getReturnType();
-        if (returnType == Void.TYPE)
-            return null;
-        else
-            return RU.valueToObject(returnType, result, m_context);
+        return call.invoke(m_function, args, m_context);
     }
-}
 
+    /**
+     * How to call the Jess function for one interface method.
+     */
+    private static final class MethodCall {
+        // Argument conversions, chosen from the declared parameter types.
+        // ANY uses the class of the argument itself, as RU.objectToValue does.
+        private static final int ANY = 0;
+        private static final int INTEGER = 1;
+        private static final int LONG = 2;
+        private static final int FLOAT = 3;
+        private static final int BOOLEAN = 4;
+        private static final int STRING = 5;
+
+        final Method m_method;
+        private final Value m_functionName;
+        private final Value m_methodName;
+        private final int[] m_conversions;
+        private final Class m_returnType;
+
+        MethodCall(Method method, Value functionName) throws JessException {
+            m_method = method;
+            m_functionName = functionName;
+            m_methodName = new Value(method.getName(), RU.SYMBOL);
+            Class[] types = method.getParameterTypes();
+            m_conversions = new int[types.length];
+            for (int i = 0; i < types.length; ++i)
+                m_conversions[i] = conversionFor(types[i]);
+            m_returnType = method.getReturnType();
+        }
+
+        private static int conversionFor(Class type) {
+            if (type == Integer.TYPE || type == Integer.class ||
+                    type == Short.TYPE || type == Short.class ||
+                    type == Byte.TYPE || type == Byte.class)
+                return INTEGER;
+            else if (type == Long.TYPE || type == Long.class)
+                return LONG;
+            else if (type == Double.TYPE || type == Double.class ||
+                    type == Float.TYPE || type == Float.class)
+                return FLOAT;
+            else if (type == Boolean.TYPE || type == Boolean.class)
+                return BOOLEAN;
+            else if (type == String.class)
+                return STRING;
+            else
+                return ANY;
+        }
+
+        Object invoke(Userfunction function, Object[] args, Context context) throws JessException {
+            int nArgs = args == null ? 0 : args.length;
+            ValueVector vv = new ValueVector(nArgs + 2);
+            vv.add(m_functionName);
+            vv.add(m_methodName);
+            for (int i = 0; i < nArgs; ++i)
+                vv.add(toValue(m_conversions[i], args[i]));
+
+            return toObject(function.call(vv, context), context);
+        }
+
+        private static Value toValue(int conversion, Object obj) throws JessException {
+            if (obj == null)
+                return Funcall.NIL;
+            switch (conversion) {
+                case INTEGER:
+                    return ValueFactory.integer(((Number) obj).intValue());
+                case LONG:
+                    return ValueFactory.longInteger(((Long) obj).longValue());
+                case FLOAT:
+                    return ValueFactory.floating(((Number) obj).doubleValue());
+                case BOOLEAN:
+                    return ((Boolean) obj).booleanValue() ? Funcall.TRUE : Funcall.FALSE;
+                case STRING:
+                    return new Value(obj.toString(), RU.STRING);
+                default:
+                    if (obj instanceof String)
+                        return new Value((String) obj, RU.STRING);
+                    return RU.objectToValue(obj.getClass(), obj);
+            }
+        }
+
+        private Object toObject(Value result, Context context) throws JessException {
+            if (m_returnType == Void.TYPE)
+                return null;
+            else if (m_returnType == Integer.TYPE && result.type() == RU.INTEGER)
+                return Integer.valueOf(result.intValue(context));
+            else if (m_returnType == Boolean.TYPE && result == Funcall.TRUE)
+                return Boolean.TRUE;
+            else if (m_returnType == Boolean.TYPE && result == Funcall.FALSE)
+                return Boolean.FALSE;
+            else
+                return RU.valueToObject(m_returnType, result, context);
+        }
+    }
+}
@@ -2357,6 +2357,8 @@ public class Jesp implements ErrorSink {
                 return factory.get(token.m_sval, RU.STRING);
 
             case JessToken.VARIABLE_TOK:
+                if (token.m_sval.indexOf(engine.getMemberChar()) > -1)
+                    return factory.getDottedVariable(token.m_sval, engine.getMemberChar());
                 return factory.get(token.m_sval, RU.VARIABLE);
             case JessToken.MULTIVARIABLE_TOK:
                 return factory.get(token.m_sval, RU.MULTIVARIABLE);
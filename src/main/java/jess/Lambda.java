@@ -3,7 +3,10 @@ package jess;
 import java.io.Serializable;
 
 /**
- * Define anonymous functions in Jess<P>
+ * Define anonymous functions in Jess. A lambda's body is resolved in the
+ * context of whoever calls it, so the function built for a given
+ * (lambda ...) expression is the same every time that expression is
+ * evaluated; it's built once and kept in the Funcall.<P>
  * (C) 2013 Sandia Corporation<BR>
  */
 class Lambda implements Userfunction, Serializable {
@@ -13,6 +16,19 @@ class Lambda implements Userfunction, Serializable {
     }
 
     public Value call(ValueVector vv, Context context) throws JessException {
+        if (vv instanceof Funcall) {
+            Funcall funcall = (Funcall) vv;
+            Value function = (Value) funcall.getScratchPad();
+            if (function == null) {
+                function = compile(vv, context);
+                funcall.setScratchPad(function);
+            }
+            return function;
+        } else
+            return compile(vv, context);
+    }
+
+    private static Value compile(ValueVector vv, Context context) throws JessException {
         Deffunction function = new Deffunction(RU.gensym("lambda"), "Generated function");
         ValueVector args = vv.get(1).listValue(context);
         for (int i=0; i<args.size(); ++i) {
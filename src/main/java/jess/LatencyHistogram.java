@@ -0,0 +1,147 @@
+package jess;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations in nanoseconds. Buckets are
+ * log-linear, in the style of HdrHistogram: each power of two is split into
+ * sixteen equal sub-buckets, so any recorded value is reported to within
+ * about 6%, across the whole range of a <tt>long</tt>, in a fixed 8K
+ * of counters. The counters aren't allocated until the first value is
+ * recorded, so an idle histogram is small. After that, recording never
+ * takes a lock.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public class LatencyHistogram implements Serializable {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private volatile AtomicLongArray m_counts;
+    private final LongAdder m_count = new LongAdder();
+    private final LongAdder m_total = new LongAdder();
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Record one duration.
+     * @param nanos the duration in nanoseconds; negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts().incrementAndGet(bucketFor(nanos));
+        m_count.increment();
+        m_total.add(nanos);
+        long max;
+        while (nanos > (max = m_max.get()) && !m_max.compareAndSet(max, nanos))
+            ;
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     * @return the count
+     */
+    public long getCount() {
+        return m_count.sum();
+    }
+
+    /**
+     * Returns the sum of all durations recorded, in nanoseconds.
+     * @return the total
+     */
+    public long getTotal() {
+        return m_total.sum();
+    }
+
+    /**
+     * Returns the longest duration recorded, in nanoseconds.
+     * @return the maximum
+     */
+    public long getMax() {
+        return m_max.get();
+    }
+
+    /**
+     * Returns the mean duration, in nanoseconds.
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotal() / count;
+    }
+
+    /**
+     * Returns the duration below which the given percentage of the
+     * recorded durations fall. The answer is the upper bound of the bucket
+     * the percentile lands in, so it may overstate by the bucket's width.
+     * @param percentile a number between 0 and 100
+     * @return the duration in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        AtomicLongArray recorded = m_counts;
+        if (recorded == null)
+            return 0;
+        long count = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts[i] = recorded.get(i);
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(highestValueIn(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset() {
+        AtomicLongArray recorded = m_counts;
+        if (recorded != null)
+            for (int i = 0; i < BUCKETS; i++)
+                recorded.set(i, 0);
+        m_count.reset();
+        m_total.reset();
+        m_max.set(0);
+    }
+
+    private AtomicLongArray counts() {
+        AtomicLongArray counts = m_counts;
+        if (counts == null) {
+            synchronized (this) {
+                counts = m_counts;
+                if (counts == null)
+                    m_counts = counts = new AtomicLongArray(BUCKETS);
+            }
+        }
+        return counts;
+    }
+
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -5,7 +5,11 @@ import java.util.*;
 
 
 class LogicalSupport implements Serializable {
+    // dependent fact -> supporting token(s)
     private Multimap m_supportForFacts;
+    // supporter fact-id -> (dependent fact -> number of supporting
+    // tokens that contain the supporter), guarded by m_supportForFacts
+    private HashMap m_dependents;
     private List m_toRetract;
 
     LogicalSupport(List toRetract) {
@@ -19,18 +23,67 @@ class LogicalSupport implements Serializable {
     private void addLogicalSupportFor(Token token, Fact fact, boolean alreadyExisted) {
         initialize();
         synchronized (m_supportForFacts) {
-            Object support = m_supportForFacts.get(fact.getIcon());
-            if (support == null && alreadyExisted) {
+            if (alreadyExisted && !m_supportForFacts.containsKey(fact.getIcon())) {
                 // This fact already existed, with unconditional support
                 return;
             }
             m_supportForFacts.put(fact.getIcon(), token);
+            indexSupport(token, fact.getIcon());
         }
     }
 
     private void initialize() {
-        if (!logicalSupportInUse())
+        if (!logicalSupportInUse()) {
+            m_dependents = new HashMap();
             m_supportForFacts = new Multimap();
+        }
+    }
+
+    private void indexSupport(Token token, Fact dependent) {
+        for (int i = 0; i < token.size(); ++i) {
+            int id = token.fact(i).getFactId();
+            if (id < 0)
+                continue;
+            Integer key = new Integer(id);
+            Map dependents = (Map) m_dependents.get(key);
+            if (dependents == null)
+                m_dependents.put(key, dependents = new LinkedHashMap());
+            int[] count = (int[]) dependents.get(dependent);
+            if (count == null)
+                dependents.put(dependent, new int[] {1});
+            else
+                ++count[0];
+        }
+    }
+
+    private void unindexSupport(Token token, Fact dependent) {
+        for (int i = 0; i < token.size(); ++i) {
+            int id = token.fact(i).getFactId();
+            if (id < 0)
+                continue;
+            Integer key = new Integer(id);
+            Map dependents = (Map) m_dependents.get(key);
+            if (dependents == null)
+                continue;
+            int[] count = (int[]) dependents.get(dependent);
+            if (count != null && --count[0] == 0) {
+                dependents.remove(dependent);
+                if (dependents.isEmpty())
+                    m_dependents.remove(key);
+            }
+        }
+    }
+
+    // Remove all support for a fact, along with its reverse index entries
+    private void removeSupport(Fact fact) {
+        Object support = m_supportForFacts.remove(fact);
+        if (support instanceof Token)
+            unindexSupport((Token) support, fact);
+        else if (support != null) {
+            List tokens = (List) support;
+            for (int i = 0; i < tokens.size(); ++i)
+                unindexSupport((Token) tokens.get(i), fact);
+        }
     }
 
     /*
@@ -42,7 +95,7 @@ class LogicalSupport implements Serializable {
             return;
 
         synchronized (m_supportForFacts) {
-            m_supportForFacts.remove(fact.getIcon());
+            removeSupport(fact.getIcon());
         }
     }
 
@@ -54,19 +107,20 @@ class LogicalSupport implements Serializable {
         if (!logicalSupportInUse())
             return;
         Fact realFact = fact.getIcon();
-        Object support = m_supportForFacts.get(realFact);
-        if (support == null)
-            return;
         synchronized (m_supportForFacts) {
-            if (m_supportForFacts.remove(realFact, token))
-                if (m_supportForFacts.get(realFact) == null)
+            if (m_supportForFacts.remove(realFact, token)) {
+                unindexSupport(token, realFact);
+                if (!m_supportForFacts.containsKey(realFact))
                     m_toRetract.add(realFact);
+            }
         }
     }
 
     void removeAllLogicalSupportFor(Fact f) {
         if (logicalSupportInUse())
-            m_supportForFacts.remove(f.getIcon());
+            synchronized (m_supportForFacts) {
+                removeSupport(f.getIcon());
+            }
     }
 
     void factAsserted(Context context, Fact f, boolean alreadyExisted) {
@@ -80,46 +134,28 @@ class LogicalSupport implements Serializable {
         }
     }
 
+    /**
+     * Returns a copy of the list of tokens supporting a fact, so callers
+     * can't change the support table, and always get a mutable list, even
+     * though the table stores a single supporter by itself.
+     */
     List getSupportingTokens(Fact fact) {
         if (logicalSupportInUse()) {
-            Object support = m_supportForFacts.get(fact.getIcon());
-            return (List) support;
+            synchronized (m_supportForFacts) {
+                List support = (List) m_supportForFacts.get(fact.getIcon());
+                return support == null ? null : new ArrayList(support);
+            }
         } else
             return null;
     }
 
-    // TODO This should be a fast operation, not a slow one!
     List getSupportedFacts(Fact supporter) {
         ArrayList list = new ArrayList();
         if (logicalSupportInUse()) {
             synchronized (m_supportForFacts) {
-                for (Iterator it = m_supportForFacts.entrySet().iterator(); it.hasNext();) {
-                    Map.Entry entry = (Map.Entry) it.next();
-                    Object support = entry.getValue();
-                    if (support == null)
-                        //noinspection UnnecessaryContinue
-                        continue;
-                    else if (support instanceof Token) {
-                        for (Token t = (Token) support; t != null; t = t.getParent()) {
-                            if (t.topFact().getFactId() == supporter.getFactId()) {
-                                list.add(entry.getKey());
-                                break;
-                            }
-                        }
-                    } else {
-                        ArrayList tokens = (ArrayList) entry.getValue();
-
-                        for (int i = 0; i < tokens.size(); ++i) {
-                            Token token = (Token) tokens.get(i);
-                            for (Token t = token; t != null; t = t.getParent()) {
-                                if (t.topFact().getFactId() == supporter.getFactId()) {
-                                    list.add(entry.getKey());
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
+                Map dependents = (Map) m_dependents.get(new Integer(supporter.getFactId()));
+                if (dependents != null)
+                    list.addAll(dependents.keySet());
             }
         }
         return list;
@@ -127,6 +163,9 @@ class LogicalSupport implements Serializable {
 
     public void clear() {
         if (logicalSupportInUse())
-            m_supportForFacts.clear();
+            synchronized (m_supportForFacts) {
+                m_supportForFacts.clear();
+                m_dependents.clear();
+            }
     }
 }
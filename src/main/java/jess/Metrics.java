@@ -0,0 +1,447 @@
+package jess;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a running engine: for each rule, how many activations
+ * it produced, how many fired and how many were cancelled, and how long
+ * its right-hand side took; for each join node, the sizes of its memories
+ * and how many token pairs it has tested; and the depth of each module's
+ * agenda. Get an engine's Metrics from {@link Rete#getMetrics()}, print
+ * them with the <tt>metrics</tt> function, or export them over JMX with
+ * {@link #registerMBean()}.
+ * <P>
+ * Counting is off by default; turn it on with {@link #setEnabled} or
+ * <tt>(metrics TRUE)</tt>. While it's off, the engine pays only for
+ * checking a flag. Recording never takes a lock, and a rule's latency
+ * histogram isn't allocated until the rule first fires with counting on.
+ * Join probe counts are kept by the nodes themselves, so engines that
+ * share a Rete network share those counts as well.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public class Metrics implements MetricsMBean {
+    private final Rete m_engine;
+    private final ConcurrentHashMap<Defrule, RuleMetrics> m_rules = new ConcurrentHashMap<Defrule, RuleMetrics>();
+    private volatile boolean m_enabled;
+    private ObjectName m_objectName;
+
+    Metrics(Rete engine) {
+        m_engine = engine;
+    }
+
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    // **********************************************************************
+    // Recording
+    // **********************************************************************
+
+    void activationCreated(Defrule rule) {
+        if (m_enabled)
+            metricsFor(rule).m_activations.increment();
+    }
+
+    void activationCancelled(Defrule rule) {
+        if (m_enabled)
+            metricsFor(rule).m_cancels.increment();
+    }
+
+    /**
+     * Returns a start time to pass to {@link #ruleFired}, or 0 if metrics
+     * are disabled.
+     */
+    long fireStarted() {
+        return m_enabled ? System.nanoTime() : 0;
+    }
+
+    void ruleFired(Defrule rule, long start) {
+        if (start != 0) {
+            RuleMetrics metrics = metricsFor(rule);
+            metrics.m_fires.increment();
+            metrics.m_rhsTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Forget the counters of a rule that has been undefined.
+     */
+    void ruleRemoved(Defrule rule) {
+        m_rules.remove(rule);
+    }
+
+    private RuleMetrics metricsFor(Defrule rule) {
+        RuleMetrics metrics = m_rules.get(rule);
+        if (metrics == null) {
+            metrics = new RuleMetrics(rule.getName());
+            RuleMetrics existing = m_rules.putIfAbsent(rule, metrics);
+            if (existing != null)
+                metrics = existing;
+        }
+        return metrics;
+    }
+
+    // **********************************************************************
+    // Reading
+    // **********************************************************************
+
+    /**
+     * Returns the counters for the named rule.
+     * @param name the name of a rule
+     * @return the rule's counters, or null if there's no such rule
+     */
+    public RuleMetrics getRuleMetrics(String name) {
+        HasLHS lhs = m_engine.findDefrule(name);
+        if (!(lhs instanceof Defrule))
+            return null;
+        return existingMetricsFor((Defrule) lhs);
+    }
+
+    // Doesn't keep counters for rules that have never been counted
+    private RuleMetrics existingMetricsFor(Defrule rule) {
+        RuleMetrics metrics = m_rules.get(rule);
+        return metrics != null ? metrics : new RuleMetrics(rule.getName());
+    }
+
+    /**
+     * Returns the counters for every rule currently defined, the rules that
+     * have spent the most time in their right-hand sides first.
+     * @return a list of RuleMetrics
+     */
+    public List<RuleMetrics> getAllRuleMetrics() {
+        List<RuleMetrics> result = new ArrayList<RuleMetrics>();
+        Set<Defrule> current = new HashSet<Defrule>();
+        for (Iterator it = m_engine.listDefrules(); it.hasNext();) {
+            Object o = it.next();
+            if (o instanceof Defrule) {
+                current.add((Defrule) o);
+                result.add(existingMetricsFor((Defrule) o));
+            }
+        }
+        // Forget rules that have been undefined or redefined
+        m_rules.keySet().retainAll(current);
+
+        Collections.sort(result, new Comparator<RuleMetrics>() {
+            public int compare(RuleMetrics a, RuleMetrics b) {
+                long ta = a.getRhsTime().getTotal(), tb = b.getRhsTime().getTotal();
+                if (ta != tb)
+                    return ta > tb ? -1 : 1;
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the join nodes of the named rule, with their memory sizes and
+     * probe counts.
+     * @param name the name of a rule or query
+     * @return a list of JoinMetrics, in network order
+     * @throws JessException if there's no such rule
+     */
+    public List<JoinMetrics> getJoinMetrics(String name) throws JessException {
+        HasLHS lhs = m_engine.findDefrule(name);
+        if (lhs == null)
+            throw new JessException("Metrics.getJoinMetrics", "No such rule or query", name);
+        List<JoinMetrics> result = new ArrayList<JoinMetrics>();
+        for (Iterator it = lhs.getNodes(); it.hasNext();) {
+            Object node = it.next();
+            if (node instanceof Node2) {
+                Node2 join = (Node2) node;
+                result.add(new JoinMetrics(join.toString(),
+                                           join.getLeftMemorySize(m_engine),
+                                           join.getRightMemorySize(m_engine),
+                                           join.getProbeCount()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of activations on each module's agenda.
+     * @return a map from module name to Integer
+     * @throws JessException if anything goes wrong
+     */
+    public Map<String, Integer> getAgendaSizes() throws JessException {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (Iterator it = m_engine.listModules(); it.hasNext();) {
+            String module = (String) it.next();
+            result.put(module, new Integer(m_engine.getAgendaSize(module)));
+        }
+        return result;
+    }
+
+    public long getFireCount() {
+        long count = 0;
+        for (RuleMetrics metrics : m_rules.values())
+            count += metrics.getFireCount();
+        return count;
+    }
+
+    public long getActivationCount() {
+        long count = 0;
+        for (RuleMetrics metrics : m_rules.values())
+            count += metrics.getActivationCount();
+        return count;
+    }
+
+    public long getCancelCount() {
+        long count = 0;
+        for (RuleMetrics metrics : m_rules.values())
+            count += metrics.getCancelCount();
+        return count;
+    }
+
+    public int getAgendaSize() {
+        try {
+            int size = 0;
+            for (Integer n : getAgendaSizes().values())
+                size += n.intValue();
+            return size;
+        } catch (JessException je) {
+            return -1;
+        }
+    }
+
+    public String[] getHotRules() {
+        List<RuleMetrics> rules = getAllRuleMetrics();
+        String[] result = new String[rules.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = rules.get(i).toString();
+        return result;
+    }
+
+    public String getReport() {
+        StringWriter sw = new StringWriter();
+        try {
+            report(new PrintWriter(sw));
+        } catch (JessException je) {
+            sw.write(je.toString());
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Print a report of every rule's counters, the join nodes of the rules
+     * that have fired, and each module's agenda depth.
+     * @param pw where to print the report
+     * @throws JessException if anything goes wrong
+     */
+    public void report(PrintWriter pw) throws JessException {
+        List<RuleMetrics> rules = getAllRuleMetrics();
+        for (RuleMetrics metrics : rules) {
+            pw.println(metrics);
+            if (metrics.getActivationCount() == 0)
+                continue;
+            for (JoinMetrics join : getJoinMetrics(metrics.getName())) {
+                pw.print("    ");
+                pw.println(join);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : getAgendaSizes().entrySet()) {
+            pw.print("agenda ");
+            pw.print(entry.getKey());
+            pw.print(": ");
+            pw.println(entry.getValue());
+        }
+        pw.print("For a total of ");
+        pw.print(getFireCount());
+        pw.print(" firings of ");
+        pw.print(rules.size());
+        pw.println(" rules.");
+        pw.flush();
+    }
+
+    public void reset() {
+        for (RuleMetrics metrics : m_rules.values())
+            metrics.reset();
+        for (Iterator it = m_engine.listDefrules(); it.hasNext();) {
+            HasLHS lhs = (HasLHS) it.next();
+            for (Iterator nodes = lhs.getNodes(); nodes.hasNext();) {
+                Object node = nodes.next();
+                if (node instanceof Node2)
+                    ((Node2) node).resetProbeCount();
+            }
+        }
+    }
+
+    /**
+     * Discard the counters of all rules; called when the engine is cleared.
+     */
+    void clear() {
+        m_rules.clear();
+    }
+
+    // **********************************************************************
+    // JMX
+    // **********************************************************************
+
+    /**
+     * Register these metrics with the platform MBean server, under the
+     * name <tt>jess:type=Metrics,engine=<i>id</i></tt>.
+     * @return the name the MBean was registered under
+     * @throws JessException if registration fails
+     */
+    public synchronized ObjectName registerMBean() throws JessException {
+        if (m_objectName != null)
+            return m_objectName;
+        try {
+            ObjectName name = new ObjectName("jess:type=Metrics,engine=" +
+                                             Integer.toHexString(System.identityHashCode(m_engine)));
+            getMBeanServer().registerMBean(this, name);
+            m_objectName = name;
+            return name;
+        } catch (JMException e) {
+            throw new JessException("Metrics.registerMBean", "Can't register MBean", e);
+        }
+    }
+
+    /**
+     * Remove these metrics from the platform MBean server, if they were
+     * registered.
+     * @throws JessException if unregistration fails
+     */
+    public synchronized void unregisterMBean() throws JessException {
+        if (m_objectName == null)
+            return;
+        try {
+            getMBeanServer().unregisterMBean(m_objectName);
+            m_objectName = null;
+        } catch (JMException e) {
+            throw new JessException("Metrics.unregisterMBean", "Can't unregister MBean", e);
+        }
+    }
+
+    private static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    /**
+     * The counters for one rule.
+     */
+    public static final class RuleMetrics {
+        private final String m_name;
+        private final LongAdder m_activations = new LongAdder();
+        private final LongAdder m_fires = new LongAdder();
+        private final LongAdder m_cancels = new LongAdder();
+        private final LatencyHistogram m_rhsTime = new LatencyHistogram();
+
+        RuleMetrics(String name) {
+            m_name = name;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * Returns the number of activations this rule has produced.
+         * @return the activation count
+         */
+        public long getActivationCount() {
+            return m_activations.sum();
+        }
+
+        /**
+         * Returns the number of times this rule has fired.
+         * @return the fire count
+         */
+        public long getFireCount() {
+            return m_fires.sum();
+        }
+
+        /**
+         * Returns the number of this rule's activations that were removed
+         * from the agenda without firing.
+         * @return the cancel count
+         */
+        public long getCancelCount() {
+            return m_cancels.sum();
+        }
+
+        /**
+         * Returns the distribution of the time this rule's right-hand side
+         * has taken, in nanoseconds.
+         * @return the histogram
+         */
+        public LatencyHistogram getRhsTime() {
+            return m_rhsTime;
+        }
+
+        void reset() {
+            m_activations.reset();
+            m_fires.reset();
+            m_cancels.reset();
+            m_rhsTime.reset();
+        }
+
+        public String toString() {
+            return m_name +
+                   ": activations=" + getActivationCount() +
+                   " fires=" + getFireCount() +
+                   " cancels=" + getCancelCount() +
+                   " rhs-total=" + micros(m_rhsTime.getTotal()) + "us" +
+                   " p50=" + micros(m_rhsTime.getPercentile(50)) + "us" +
+                   " p99=" + micros(m_rhsTime.getPercentile(99)) + "us" +
+                   " max=" + micros(m_rhsTime.getMax()) + "us";
+        }
+
+        private static long micros(long nanos) {
+            return nanos / 1000;
+        }
+    }
+
+    /**
+     * A snapshot of one join node's memories and probe count.
+     */
+    public static final class JoinMetrics {
+        private final String m_node;
+        private final int m_leftSize, m_rightSize;
+        private final long m_probes;
+
+        JoinMetrics(String node, int leftSize, int rightSize, long probes) {
+            m_node = node;
+            m_leftSize = leftSize;
+            m_rightSize = rightSize;
+            m_probes = probes;
+        }
+
+        public String getNode() {
+            return m_node;
+        }
+
+        public int getLeftMemorySize() {
+            return m_leftSize;
+        }
+
+        public int getRightMemorySize() {
+            return m_rightSize;
+        }
+
+        /**
+         * Returns the number of left/right token pairs this node has tested.
+         * @return the probe count
+         */
+        public long getProbeCount() {
+            return m_probes;
+        }
+
+        public String toString() {
+            return m_node + " left=" + m_leftSize + " right=" + m_rightSize + " probes=" + m_probes;
+        }
+    }
+}
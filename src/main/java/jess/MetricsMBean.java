@@ -0,0 +1,65 @@
+package jess;
+
+/**
+ * The management interface for an engine's {@link Metrics}. Register it
+ * with {@link Metrics#registerMBean()} to read an engine's counters
+ * from JConsole or any other JMX client.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public interface MetricsMBean {
+    /**
+     * Whether counters are being updated.
+     * @return true if metrics are enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Turn counting on or off.
+     * @param enabled true to enable metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the total number of rule firings counted.
+     * @return the number of firings
+     */
+    long getFireCount();
+
+    /**
+     * Returns the total number of activations created.
+     * @return the number of activations
+     */
+    long getActivationCount();
+
+    /**
+     * Returns the total number of activations cancelled before firing.
+     * @return the number of cancellations
+     */
+    long getCancelCount();
+
+    /**
+     * Returns the number of activations on the agenda, in all modules.
+     * @return the agenda depth
+     */
+    int getAgendaSize();
+
+    /**
+     * Returns one line per rule, the rules that have spent the most time in
+     * their right-hand sides first.
+     * @return the rules and their counters
+     */
+    String[] getHotRules();
+
+    /**
+     * Returns the full report printed by the <tt>metrics</tt> function.
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * Set every counter back to zero.
+     */
+    void reset();
+}
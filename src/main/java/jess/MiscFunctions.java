@@ -3,6 +3,8 @@ package jess;
 import jess.factory.Factory;
 
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.*;
 
@@ -18,6 +20,7 @@ class MiscFunctions extends IntrinsicPackageImpl {
     public void add(HashMap table) {
 
         addFunction(new JessSocket(), table);
+        addFunction(new StartFactServer(), table);
         addFunction(new JessFormat(), table);
         addFunction(new JessSystem(), table);
         addFunction(new Time(), table);
@@ -530,6 +533,25 @@ class JessSocket implements Userfunction, Serializable {
     }
 }
 
+/**
+ * (fact-server &lt;port&gt; [&lt;io-threads&gt;]) starts a {@link FactServer} on the
+ * loopback interface and returns it. Port 0 chooses any free port.
+ */
+class StartFactServer implements Userfunction, Serializable {
+    public String getName() {
+        return "fact-server";
+    }
+
+    public Value call(ValueVector vv, Context context) throws JessException {
+        int port = vv.get(1).intValue(context);
+        int threads = vv.size() > 2 ? vv.get(2).intValue(context) : 1;
+        FactServer server = new FactServer(context.getEngine(),
+                                           new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                                           threads, FactServer.DEFAULT_BATCH_SIZE);
+        return new Value(server);
+    }
+}
+
 class Setgen implements Userfunction, Serializable {
     public String getName() {
         return "setgen";
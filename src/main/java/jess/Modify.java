@@ -1,5 +1,7 @@
 package jess;
 
+import java.io.Serializable;
+
 /**
  * The "modify" function
  * (C) 2006 Sandia Corporation and E. J. Friedman-Hill
@@ -21,21 +23,58 @@ class Modify extends NVPairOperation implements Userfunction {
 
         int size = vv.size()-2;
         String[] slotNames = new String[size];
-        Value[] slotValues = new Value[size];
+        ValueVector[] pairs = new ValueVector[size];
         for (int i = 2, j=0; i < vv.size(); i++, j++) {
             // fetch the slot, value subexp, stored as a List
-            ValueVector svp = vv.get(i).listValue(context);
-
-            String slotName = getSlotName(svp, context);
-            int type = dt.getSlotType(slotName);
-            slotNames[j] = slotName;
-            slotValues[j] = getSlotValue(svp, context, type);
+            pairs[j] = vv.get(i).listValue(context);
+            slotNames[j] = getSlotName(pairs[j], context);
         }
 
-        engine.modify(fact, slotNames, slotValues, context);
+        // The slot indexes and types for a call site are looked up once
+        // and kept in the Funcall for as long as the template and slot
+        // names stay the same.
+        SlotPlan plan = null;
+        if (vv instanceof Funcall) {
+            plan = (SlotPlan) ((Funcall) vv).getScratchPad();
+            if (plan == null || !plan.matches(dt, slotNames)) {
+                plan = new SlotPlan(dt, slotNames);
+                ((Funcall) vv).setScratchPad(plan);
+            }
+        } else
+            plan = new SlotPlan(dt, slotNames);
+
+        Value[] slotValues = new Value[size];
+        for (int j = 0; j < size; j++)
+            slotValues[j] = getSlotValue(pairs[j], context, plan.m_types[j]);
+
+        engine.modify(fact, plan.m_indexes, slotValues, context);
 
         return new FactIDValue(fact);
     }
 
-}
+    private static class SlotPlan implements Serializable {
+        private final Deftemplate m_template;
+        private final String[] m_names;
+        final int[] m_indexes, m_types;
+
+        SlotPlan(Deftemplate template, String[] names) throws JessException {
+            m_template = template;
+            m_names = names;
+            m_indexes = new int[names.length];
+            m_types = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                m_types[i] = template.getSlotType(names[i]);
+                m_indexes[i] = template.getSlotIndex(names[i]);
+            }
+        }
 
+        boolean matches(Deftemplate template, String[] names) {
+            if (template != m_template || names.length != m_names.length)
+                return false;
+            for (int i = 0; i < names.length; i++)
+                if (!names[i].equals(m_names[i]))
+                    return false;
+            return true;
+        }
+    }
+}
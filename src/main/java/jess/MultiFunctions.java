@@ -39,6 +39,14 @@ class MultiFunctions extends IntrinsicPackageImpl {
         // complement added by Win Carus (10.2.97)
         addFunction(new Complement(), table);
     }
+
+    /**
+     * Returns a HashMap capacity that will hold the given number of
+     * entries without rehashing.
+     */
+    static int capacityFor(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
 }
 
 
@@ -49,8 +57,6 @@ class DeleteMF implements Userfunction, Serializable {
     }
 
     public Value call(ValueVector vv, Context context) throws JessException {
-        ValueVector newmf = new ValueVector();
-
         ValueVector mf = vv.get(1).listValue(context);
         int begin = (int) vv.get(2).numericValue(context);
         int end = (int) vv.get(3).numericValue(context);
@@ -59,14 +65,11 @@ class DeleteMF implements Userfunction, Serializable {
             throw new JessException("delete$",
                     "invalid range",
                     "(" + begin + "," + end + ")");
-        for (int i = 0; i < mf.size(); i++) {
-            if (i >= (begin - 1) && i <= (end - 1)) {
-                continue;
-            }
-            newmf.add(mf.get(i).resolveValue(context));
-        }
 
-        return new Value(newmf, RU.LIST);
+        ValueVector newmf = new ValueVector(mf.size() - (end - begin + 1));
+        newmf.addResolved(mf, 0, begin - 1, context);
+        newmf.addResolved(mf, end, mf.size(), context);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -80,7 +83,7 @@ class FirstMF implements Userfunction, Serializable {
         ValueVector newmf = new ValueVector(1);
         if (mf.size() > 0)
             newmf.add(mf.get(0).resolveValue(context));
-        return new Value(newmf, RU.LIST);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -122,12 +125,10 @@ class InsertMF implements Userfunction, Serializable {
                     "index must be >= 1 and <= " + (mf.size() + 1), ": " + idx);
         }
 
-        ValueVector newmf = new ValueVector();
+        ValueVector newmf = new ValueVector(mf.size() + vv.size() - 3);
         // adjust for zero indexing
         --idx;
-        for (int i = 0; i < idx; i++) {
-            newmf.add(mf.get(i).resolveValue(context));
-        }
+        newmf.addResolved(mf, 0, idx, context);
 
         for (int j = 3; j < vv.size(); j++) {
             Value v = vv.get(j).resolveValue(context);
@@ -135,16 +136,12 @@ class InsertMF implements Userfunction, Serializable {
                 newmf.add(v);
             else {
                 ValueVector insertedmf = v.listValue(context);
-                for (int k = 0; k < insertedmf.size(); k++)
-                    newmf.add(insertedmf.get(k).resolveValue(context));
+                newmf.addResolved(insertedmf, 0, insertedmf.size(), context);
             }
         }
 
-        for (int i = idx; i < mf.size(); i++) {
-            newmf.add(mf.get(i).resolveValue(context));
-        }
-
-        return new Value(newmf, RU.LIST);
+        newmf.addResolved(mf, idx, mf.size(), context);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -198,15 +195,13 @@ class ReplaceMF implements Userfunction, Serializable {
                     ": " + startIdx + " " + endIdx);
         }
 
-        ValueVector newmf = new ValueVector();
+        ValueVector newmf = new ValueVector(mf.size() + vv.size() - 4);
 
         // adjust for 0-based
         --startIdx;
         --endIdx;
 
-        for (int i = 0; i <= startIdx - 1; i++) {
-            newmf.add(mf.get(i).resolveValue(context));
-        }
+        newmf.addResolved(mf, 0, startIdx, context);
 
         for (int j = 4; j < vv.size(); j++) {
             Value v = vv.get(j).resolveValue(context);
@@ -214,16 +209,12 @@ class ReplaceMF implements Userfunction, Serializable {
                 newmf.add(v);
             else {
                 ValueVector insertedmf = v.listValue(context);
-                for (int k = 0; k < insertedmf.size(); k++)
-                    newmf.add(insertedmf.get(k).resolveValue(context));
+                newmf.addResolved(insertedmf, 0, insertedmf.size(), context);
             }
         }
 
-        for (int i = endIdx + 1; i < mf.size(); i++) {
-            newmf.add(mf.get(i).resolveValue(context));
-        }
-
-        return new Value(newmf, RU.LIST);
+        newmf.addResolved(mf, endIdx + 1, mf.size(), context);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -233,15 +224,10 @@ class RestMF implements Userfunction, Serializable {
     }
 
     public Value call(ValueVector vv, Context context) throws JessException {
-        ValueVector newmf = new ValueVector();
-
         ValueVector mf = vv.get(1).listValue(context);
-
-        for (int i = 1; i < mf.size(); i++) {
-            newmf.add(mf.get(i).resolveValue(context));
-        }
-
-        return new Value(newmf, RU.LIST);
+        ValueVector newmf = new ValueVector(Math.max(mf.size() - 1, 1));
+        newmf.addResolved(mf, 1, mf.size(), context);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -282,20 +268,14 @@ class SubseqMF implements Userfunction, Serializable {
         if (endIdx > mf.size())
             endIdx = mf.size();
 
-        ValueVector newmf = new ValueVector();
-
         if (startIdx <= mf.size() &&
                 endIdx <= mf.size() &&
                 startIdx <= endIdx) {
-            if (startIdx == endIdx) {
-                newmf.add(mf.get(startIdx - 1).resolveValue(context));
-            } else {
-                for (int i = startIdx; i <= endIdx; ++i) {
-                    newmf.add(mf.get(i - 1).resolveValue(context));
-                }
-            }
+            ValueVector newmf = new ValueVector(endIdx - startIdx + 1);
+            newmf.addResolved(mf, startIdx - 1, endIdx, context);
+            return new Value(newmf.markInternal(), RU.LIST);
         }
-        return new Value(newmf, RU.LIST);
+        return new Value(new ValueVector().markInternal(), RU.LIST);
     }
 }
 
@@ -311,7 +291,7 @@ class SubsetP implements Userfunction, Serializable {
         // if (one member in the first multifield is not in the second multifield)
         // then return FALSE else return TRUE
 
-        HashMap ht = new HashMap();
+        HashMap ht = new HashMap(MultiFunctions.capacityFor(secondmf.size()));
 
         for (int i = 0; i < secondmf.size(); ++i) {
             Value v = secondmf.get(i).resolveValue(context);
@@ -336,9 +316,9 @@ class Union implements Userfunction, Serializable {
     public Value call(ValueVector vv, Context context) throws JessException {
         ValueVector firstmf = vv.get(1).listValue(context);
 
-        ValueVector newmf = new ValueVector();
+        ValueVector newmf = new ValueVector(Math.max(firstmf.size(), 10));
 
-        HashMap ht = new HashMap();
+        HashMap ht = new HashMap(MultiFunctions.capacityFor(firstmf.size()));
 
         for (int i = 0; i < firstmf.size(); ++i) {
             Value v = firstmf.get(i).resolveValue(context);
@@ -354,7 +334,7 @@ class Union implements Userfunction, Serializable {
                     newmf.add(v);
             }
         }
-        return new Value(newmf, RU.LIST);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -369,7 +349,7 @@ class Intersection implements Userfunction, Serializable {
 
         ValueVector newmf = new ValueVector();
 
-        HashMap ht = new HashMap();
+        HashMap ht = new HashMap(MultiFunctions.capacityFor(firstmf.size()));
 
         for (int i = 0; i < firstmf.size(); ++i) {
             Value v = firstmf.get(i).resolveValue(context);
@@ -382,7 +362,7 @@ class Intersection implements Userfunction, Serializable {
                 newmf.add(v);
             }
         }
-        return new Value(newmf, RU.LIST);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -397,7 +377,7 @@ class Complement implements Userfunction, Serializable {
 
         ValueVector newmf = new ValueVector();
 
-        HashMap ht = new HashMap();
+        HashMap ht = new HashMap(MultiFunctions.capacityFor(firstmf.size()));
 
         for (int i = 0; i < firstmf.size(); ++i) {
             Value v = firstmf.get(i).resolveValue(context);
@@ -411,7 +391,7 @@ class Complement implements Userfunction, Serializable {
             }
         }
 
-        return new Value(newmf, RU.LIST);
+        return new Value(newmf.markInternal(), RU.LIST);
     }
 }
 
@@ -437,7 +417,7 @@ class ExplodeMF implements Userfunction, Serializable {
             retval.add(jt.rawValueOf(context));
             jt = jts.nextToken();
         }
-        return new Value(retval, RU.LIST);
+        return new Value(retval.markInternal(), RU.LIST);
 
     }
 }
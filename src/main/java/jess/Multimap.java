@@ -47,11 +47,8 @@ class Multimap implements Map, java.io.Serializable {
             return null;
         else if (current instanceof List)
             return current;
-        else {
-            ArrayList list = new ArrayList();
-            list.add(current);
-            return list;
-        }
+        else
+            return Collections.singletonList(current);
     }
 
     public Object remove(Object key) {
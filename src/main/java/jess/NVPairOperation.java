@@ -57,12 +57,14 @@ abstract class NVPairOperation implements Serializable {
                 Value listItem = svp.get(i).resolveValue(c);
                 if (listItem.type() == RU.LIST) {
                     ValueVector sublist = listItem.listValue(c);
-                    for (int j = 0; j < sublist.size(); j++)
-                        vv.add(sublist.get(j).resolveValue(c));
+                    // A lone list that needs no flattening is used as it is
+                    if (svp.size() == 2 && sublist.isShareable())
+                        return listItem;
+                    vv.addResolved(sublist, 0, sublist.size(), c);
                 } else
                     vv.add(listItem);
             }
-            return new Value(vv, RU.LIST);
+            return new Value(vv.markInternal(), RU.LIST);
         }
     }
 }
@@ -0,0 +1,106 @@
+package jess;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Not a test at all. A specialized version of {@link Node1MTMF} for the
+ * common membership pattern, in which a multislot is matched by a single
+ * variable surrounded by two multifields, as in <tt>(items $? ?x $?)</tt>.
+ * Emits one token per element of the multislot, without enumerating
+ * partitions; the tokens are exactly those Node1MTMF would produce, in
+ * the same order.
+ * <P>
+ * When both multifields are blanks, as they usually are, nothing ever
+ * looks at them, so every token gets the same empty list for both
+ * instead of a copy of the elements on either side. Those tokens would
+ * be equal for repeated elements, so each distinct element is emitted
+ * only once.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+class Node1MTMEM extends Node1 {
+    private final int m_idx;
+    private final boolean m_blanks;
+
+    Node1MTMEM(int idx, boolean blanks) {
+        m_idx = idx;
+        m_blanks = blanks;
+    }
+
+    /**
+     * Returns true if the given multifield flags describe a membership
+     * pattern this node can handle.
+     */
+    static boolean isMembershipPattern(boolean[] multiIndexes) {
+        return multiIndexes.length == 3 &&
+                multiIndexes[0] && !multiIndexes[1] && multiIndexes[2];
+    }
+
+    void callNodeRight(int tag, Token t, Context context) throws JessException {
+        if (processClearCommand(tag, t, context))
+            return;
+
+        Fact oldFact = t.fact(0);
+        ValueVector vv = oldFact.get(m_idx).listValue(null);
+        int size = vv.size();
+        if (m_blanks) {
+            emitElements(tag, oldFact, vv, context);
+            return;
+        }
+
+        // Same order as Node1MTMF's partitions: last element first
+        for (int i = size - 1; i >= 0; i--) {
+            ValueVector before = new ValueVector(i);
+            for (int j = 0; j < i; j++)
+                before.add(vv.get(j));
+
+            ValueVector after = new ValueVector(size - i - 1);
+            for (int j = i + 1; j < size; j++)
+                after.add(vv.get(j));
+
+            emit(tag, oldFact, new Value(before, RU.LIST), vv.get(i), new Value(after, RU.LIST), context);
+        }
+    }
+
+    private void emitElements(int tag, Fact oldFact, ValueVector vv, Context context) throws JessException {
+        int size = vv.size();
+        Set<Value> seen = size > 1 ? new HashSet<Value>() : null;
+        for (int i = size - 1; i >= 0; i--) {
+            Value elem = vv.get(i);
+            if (seen == null || seen.add(elem))
+                emit(tag, oldFact, Funcall.NILLIST, elem, Funcall.NILLIST, context);
+        }
+    }
+
+    private void emit(int tag, Fact oldFact, Value before, Value elem, Value after, Context context)
+            throws JessException {
+        Fact f = (Fact) oldFact.clone();
+        f.setIcon(oldFact.getIcon());
+
+        ValueVector newVv = new ValueVector(3);
+        newVv.add(before);
+        newVv.add(elem);
+        newVv.add(after);
+        f.set(new Value(newVv, RU.LIST), m_idx);
+
+        passAlong(tag, Rete.getFactory().newToken(f), context);
+    }
+
+    public String toString() {
+        return "[Split the multislot at index " + m_idx + " into one token per element]";
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof Node1MTMEM) {
+            Node1MTMEM n = (Node1MTMEM) o;
+            return m_idx == n.m_idx && m_blanks == n.m_blanks;
+        } else
+            return false;
+    }
+
+    public int hashCode() {
+        return m_idx * 2 + (m_blanks ? 1 : 0);
+    }
+}
@@ -0,0 +1,104 @@
+package jess;
+
+import java.util.regex.Pattern;
+
+/**
+ * Test a slot value against a regular expression known at compile
+ * time. Replaces a call to <tt>regexp</tt> with a constant expression,
+ * as generated for LHS constraints like <tt>(name /J.*n/)</tt>, so the
+ * expression is compiled once when the rule is defined.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+class Node1TRX extends Node1 {
+    private final int m_idx;
+    private final int m_subIdx;
+    private final boolean m_test;
+    private final Pattern m_regex;
+
+    Node1TRX(int test, int idx, int subIdx, Pattern regex) {
+        m_test = (test == TestBase.EQ);
+        m_idx = idx;
+        m_subIdx = subIdx;
+        m_regex = regex;
+    }
+
+    /**
+     * If the given test value is a call to the built-in <tt>regexp</tt>
+     * function with a literal expression and a slot of the current
+     * pattern as arguments, returns a node to perform the test;
+     * otherwise returns null.
+     */
+    static Node1TRX forTest(int test, Value v) throws JessException {
+        if (v.type() != RU.FUNCALL)
+            return null;
+        Funcall f = v.funcallValue(null);
+        if (f.size() != 3 || !RegexpFunctions.isRegexpMatch(f.getResolvedFunction()))
+            return null;
+        if (f.get(1).type() != RU.STRING || !(f.get(2) instanceof BindingValue))
+            return null;
+
+        BindingValue slot = (BindingValue) f.get(2);
+        try {
+            Pattern regex = Pattern.compile(f.get(1).stringValue(null));
+            return new Node1TRX(test, slot.getSlotIndex(), slot.getSubIndex(), regex);
+        } catch (RuntimeException badPattern) {
+            // Leave it to report the error at match time, as before
+            return null;
+        }
+    }
+
+    void callNodeRight(int tag, Token t, Context context) throws JessException {
+        if (processClearCommand(tag, t, context))
+            return;
+
+        else if (tag == RU.REMOVE || tag == RU.MODIFY_REMOVE) {
+            passAlong(tag, t, context);
+            return;
+        }
+
+        try {
+            Value v = t.topFact().get(m_idx);
+            if (m_subIdx != -1)
+                v = v.listValue(null).get(m_subIdx);
+
+            boolean result = m_regex.matcher(v.stringValue(context)).matches() == m_test;
+
+            // inform extensions that functions were called and result of calls
+            t = t.prepare(result);
+
+            if (result)
+                passAlong(tag, t, context);
+
+        } catch (JessException re) {
+            re.addContext("rule LHS (TRX)", context);
+            throw re;
+        } catch (Exception e) {
+            JessException re = new JessException("Node1TRX.call",
+                    "Error during LHS execution",
+                    e);
+            re.addContext("rule LHS (TRX)", context);
+            throw re;
+        }
+    }
+
+    public String toString() {
+        return "[Test that slot at index " + m_idx +
+                (m_subIdx == -1 ? "" : ", subslot " + m_subIdx) +
+                (m_test ? " matches /" : " doesn't match /") + m_regex.pattern() + "/]";
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof Node1TRX) {
+            Node1TRX n = (Node1TRX) o;
+            return (m_idx == n.m_idx && m_subIdx == n.m_subIdx && m_test == n.m_test &&
+                    m_regex.pattern().equals(n.m_regex.pattern()));
+        } else
+            return false;
+    }
+
+    public int hashCode() {
+        return ((m_idx * 31 + m_subIdx) * 31 + m_regex.pattern().hashCode()) * 2 + (m_test ? 1 : 0);
+    }
+}
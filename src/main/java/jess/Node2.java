@@ -3,6 +3,7 @@ package jess;
 import java.io.*;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A non-negated, two-input node of the Rete network.
@@ -37,6 +38,8 @@ class Node2 extends NodeJoin implements LogicalNode, Serializable, TokenTask {
      * True if we can do short-cut testing
      */
     private boolean m_blessed = false;
+    private transient String m_telemetryName;
+    private final LongAdder m_probes = new LongAdder();
 
     private final String m_rightKey;
     private final String m_leftKey;
@@ -305,6 +308,7 @@ class Node2 extends NodeJoin implements LogicalNode, Serializable, TokenTask {
 
         if (tokens != null) {
             int size = tokens.size();
+            countProbes(size, leftToken, context);
 
             for (int i = 0; i < size; i++) {
                 // Must be inside loop due to passAlong() call
@@ -370,6 +374,7 @@ class Node2 extends NodeJoin implements LogicalNode, Serializable, TokenTask {
         if (tokens != null) {
             int size = tokens.size();
             if (size > 0) {
+                countProbes(size, rightToken, context);
                 int ntests = m_nTests;
                 for (int i = 0; i < size; i++) {
                     Token lt = tokens.get(i);
@@ -383,6 +388,44 @@ class Node2 extends NodeJoin implements LogicalNode, Serializable, TokenTask {
         }
     }
 
+    final void countProbes(int size, Token token, Context context) {
+        Rete engine = context.getEngine();
+        if (engine.getMetrics().isEnabled())
+            m_probes.add(size);
+        Telemetry telemetry = engine.getTelemetry();
+        if (telemetry != null)
+            telemetry.nodeActivity(this, token, size);
+    }
+
+    /**
+     * Returns this node's description, as of the first time it was asked
+     * for, for naming the node in a {@link Telemetry} stream.
+     */
+    String getTelemetryName() {
+        String name = m_telemetryName;
+        if (name == null)
+            m_telemetryName = name = toString();
+        return name;
+    }
+
+    long getProbeCount() {
+        return m_probes.sum();
+    }
+
+    void resetProbeCount() {
+        m_probes.reset();
+    }
+
+    int getLeftMemorySize(Rete engine) {
+        TokenTree memory = getLeftMemory(engine);
+        return memory == null ? 0 : memory.size();
+    }
+
+    int getRightMemorySize(Rete engine) {
+        TokenTree memory = getRightMemory(engine);
+        return memory == null ? 0 : memory.size();
+    }
+
     boolean runTests(int ntests, Context context, Token rightToken)
             throws JessException {
 
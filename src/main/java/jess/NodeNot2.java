@@ -108,6 +108,7 @@ class NodeNot2 extends Node2 implements Serializable {
         if (tokens != null) {
             int size = tokens.size();
             if (size > 0) {
+                countProbes(size, rightToken, context);
                 for (int i = 0; i < size; i++) {
                     Token leftToken = tokens.get(i);
                     context.setToken(leftToken);
@@ -127,10 +128,7 @@ class NodeNot2 extends Node2 implements Serializable {
     }
 
     private Token subsetRightToken(Token rightToken) {
-        Token parent = rightToken;
-        while (parent.size() > m_size)
-            parent = parent.getParent();
-        return parent;
+        return rightToken.prefix(m_size);
     }
 
     /**
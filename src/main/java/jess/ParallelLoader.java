@@ -0,0 +1,440 @@
+package jess;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class implements the "batch*" command, which loads a large
+ * rulebase spread over many files faster than calling "batch" on each
+ * file in turn. Loading happens in four steps:
+ * <ol>
+ * <li>All the files are read and broken into top-level forms, several
+ * files at a time.
+ * <li>Everything except defrules, defqueries and deffacts -- defmodules,
+ * deftemplates, deffunctions, defglobals, and function calls -- is parsed
+ * and executed, one form at a time, in the order the files were given.
+ * Then the deffacts are executed.
+ * <li>The defrules and defqueries are parsed, several at a time. Since
+ * every deftemplate and deffunction has been defined by now, a rule or
+ * deffacts may refer to a template defined later in the same file, or in
+ * a later file.
+ * <li>The rules and queries are added to the engine in their original
+ * order, and then the existing facts, if any, are presented to all of them
+ * in a single pass, rather than once per rule.
+ * </ol>
+ * Because rules and deffacts are added last, a file whose function calls
+ * depend on its own rules -- a script that calls (reset) and (run), for
+ * example -- should be loaded with "batch" instead. JessML files are
+ * loaded with "batch" during the second step. If any rule can't be parsed,
+ * the first such error, in file order, is thrown and no rules are added.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ *
+ * @see Batch
+ */
+
+public class ParallelLoader implements Userfunction, Serializable {
+
+    /** Rules are handed to the worker threads in groups of this size. */
+    private static final int CHUNK_SIZE = 64;
+
+    public String getName() {
+        return "batch*";
+    }
+
+    /**
+     * Load a rulebase from a set of files of Jess code, using one thread per
+     * available processor. Each filename is looked for as by
+     * {@link Batch#findDocument}. Uses the platform default character set.
+     *
+     * @param filenames the names of the files to load
+     * @param engine    the Rete object to load with the constructs from the files
+     * @return the symbol TRUE
+     * @throws JessException if anything goes wrong
+     */
+    public static Value load(String[] filenames, Rete engine) throws JessException {
+        return load(filenames, Batch.defaultCharset(), engine, engine.getGlobalContext(),
+                    Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load a rulebase from a set of files of Jess code. Each filename is
+     * looked for as by {@link Batch#findDocument}. Function calls in the
+     * files are executed in the given context.
+     *
+     * @param filenames the names of the files to load
+     * @param charset   the name of the character set used in the files
+     * @param engine    the Rete object to load with the constructs from the files
+     * @param context   the execution context to use
+     * @param threads   the number of threads to parse with
+     * @return the symbol TRUE
+     * @throws JessException if anything goes wrong
+     */
+    public static Value load(String[] filenames, String charset, Rete engine, Context context, int threads)
+            throws JessException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Jess loader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            SourceFile[] files = readFiles(filenames, charset, engine, executor);
+            List<Form> rules = executeDeclarations(files, charset, engine, context);
+            parseRules(rules, engine, context, executor);
+            addRules(rules, engine);
+            return Funcall.TRUE;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Step one: break every file into forms.
+     */
+    private static SourceFile[] readFiles(final String[] filenames, final String charset, final Rete engine,
+                                          ExecutorService executor) throws JessException {
+        List<Future<SourceFile>> futures = new ArrayList<Future<SourceFile>>();
+        for (int i = 0; i < filenames.length; ++i) {
+            final String filename = filenames[i];
+            futures.add(executor.submit(new Callable<SourceFile>() {
+                public SourceFile call() throws JessException {
+                    return readFile(filename, charset, engine);
+                }
+            }));
+        }
+
+        SourceFile[] files = new SourceFile[filenames.length];
+        for (int i = 0; i < files.length; ++i)
+            files[i] = (SourceFile) await(futures.get(i));
+        return files;
+    }
+
+    private static SourceFile readFile(String filename, String charset, Rete engine) throws JessException {
+        SourceFile file = new SourceFile(filename);
+        PushbackReader fis = null;
+        try {
+            fis = Batch.findDocument(engine, filename, charset);
+            if (Batch.isXMLDocument(fis)) {
+                file.m_xml = true;
+                return file;
+            }
+
+            Tokenizer tokenizer = Batch.openTokenizer(engine, filename, charset, fis);
+            List<JessToken> tokens = new ArrayList<JessToken>();
+            int depth = 0;
+            JessToken token;
+            while (!(token = tokenizer.nextToken()).isEOF()) {
+                if (depth == 0 && token.isComment())
+                    continue;
+                tokens.add(token);
+                if (token.m_ttype == '(')
+                    ++depth;
+                else if (token.m_ttype == ')')
+                    --depth;
+                if (depth <= 0) {
+                    file.m_forms.add(new Form(file, tokens, token));
+                    tokens = new ArrayList<JessToken>();
+                    depth = 0;
+                }
+            }
+            // An unbalanced form runs to the end of the file, where
+            // the parser will complain about it.
+            if (!tokens.isEmpty())
+                file.m_forms.add(new Form(file, tokens, token));
+            return file;
+
+        } catch (IOException ex) {
+            throw new JessException("batch*", "I/O Exception", "", filename, ex);
+        } finally {
+            if (fis != null) try {
+                fis.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    /**
+     * Step two: execute everything but the rules and deffacts, in order,
+     * noting the module each rule and deffacts belongs to. Then, with all
+     * the templates defined, execute the deffacts.
+     */
+    private static List<Form> executeDeclarations(SourceFile[] files, String charset, Rete engine, Context context)
+            throws JessException {
+        List<Form> rules = new ArrayList<Form>();
+        List<Form> deffacts = new ArrayList<Form>();
+        FormTokenizer tokenizer = new FormTokenizer();
+        for (int i = 0; i < files.length; ++i) {
+            SourceFile file = files[i];
+            if (file.m_xml) {
+                Batch.batch(file.m_name, charset, engine, context);
+                continue;
+            }
+
+            Jesp jesp = new Jesp(tokenizer, engine);
+            jesp.setFileName(file.m_name);
+            for (Iterator<Form> it = file.m_forms.iterator(); it.hasNext();) {
+                Form form = it.next();
+                String head = form.getHead();
+                if ("defrule".equals(head) || "defquery".equals(head) || "deffacts".equals(head)) {
+                    // Parsing one of these makes its module current, as it would in batch
+                    String module = form.getModule();
+                    if (module != null)
+                        setCurrentModule(engine, module, form);
+                    form.m_module = engine.getCurrentModule();
+                    ("deffacts".equals(head) ? deffacts : rules).add(form);
+                } else {
+                    tokenizer.setForm(form);
+                    jesp.clearStack();
+                    jesp.parseExpression(context, true);
+                }
+            }
+        }
+
+        String currentModule = engine.getCurrentModule();
+        try {
+            for (Iterator<Form> it = deffacts.iterator(); it.hasNext();) {
+                Form form = it.next();
+                Jesp jesp = new Jesp(tokenizer, engine);
+                jesp.setFileName(form.m_file.m_name);
+                engine.setCurrentModule(form.m_module);
+                tokenizer.setForm(form);
+                jesp.parseExpression(context, true);
+            }
+        } finally {
+            engine.setCurrentModule(currentModule);
+        }
+        return rules;
+    }
+
+    private static void setCurrentModule(Rete engine, String module, Form form) throws JessException {
+        try {
+            engine.setCurrentModule(module);
+        } catch (JessException je) {
+            je.setLineNumber(form.m_line);
+            je.setFilename(form.m_file.m_name);
+            throw je;
+        }
+    }
+
+    /**
+     * Step three: parse the rules, a module at a time. All the rules
+     * being parsed at once belong to the module that's current, so the
+     * parsers never change the current module out from under one another.
+     */
+    private static void parseRules(List<Form> rules, final Rete engine, final Context context,
+                                   ExecutorService executor) throws JessException {
+        Map<String, List<Form>> byModule = new LinkedHashMap<String, List<Form>>();
+        for (Iterator<Form> it = rules.iterator(); it.hasNext();) {
+            Form form = it.next();
+            List<Form> forms = byModule.get(form.m_module);
+            if (forms == null)
+                byModule.put(form.m_module, forms = new ArrayList<Form>());
+            forms.add(form);
+        }
+
+        String currentModule = engine.getCurrentModule();
+        try {
+            for (Iterator<Map.Entry<String, List<Form>>> it = byModule.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, List<Form>> entry = it.next();
+                engine.setCurrentModule(entry.getKey());
+                List<Form> forms = entry.getValue();
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for (int start = 0; start < forms.size(); start += CHUNK_SIZE) {
+                    final List<Form> chunk = forms.subList(start, Math.min(forms.size(), start + CHUNK_SIZE));
+                    final Context chunkContext = context.push();
+                    futures.add(executor.submit(new Callable<Object>() {
+                        public Object call() {
+                            parseChunk(chunk, engine, chunkContext);
+                            return null;
+                        }
+                    }));
+                }
+                for (Iterator<Future<Object>> f = futures.iterator(); f.hasNext();)
+                    await(f.next());
+            }
+        } finally {
+            engine.setCurrentModule(currentModule);
+        }
+
+        for (Iterator<Form> it = rules.iterator(); it.hasNext();) {
+            Form form = it.next();
+            if (form.m_error != null)
+                throw form.m_error;
+        }
+    }
+
+    private static void parseChunk(List<Form> chunk, Rete engine, Context context) {
+        FormTokenizer tokenizer = new FormTokenizer();
+        Jesp jesp = new Jesp(tokenizer, engine);
+        String filename = null;
+        for (Iterator<Form> it = chunk.iterator(); it.hasNext();) {
+            Form form = it.next();
+            if (!form.m_file.m_name.equals(filename))
+                jesp.setFileName(filename = form.m_file.m_name);
+            tokenizer.setForm(form);
+            jesp.clearStack();
+            try {
+                form.m_rule = (HasLHS) jesp.parseExpression(context, false);
+            } catch (JessException je) {
+                form.m_error = je;
+            }
+        }
+    }
+
+    /**
+     * Step four: add the rules in order, then bring them all up to date at once.
+     */
+    private static void addRules(List<Form> rules, Rete engine) throws JessException {
+        ReteCompiler compiler = engine.getCompiler();
+        compiler.deferUpdates();
+        try {
+            for (Iterator<Form> it = rules.iterator(); it.hasNext();) {
+                Form form = it.next();
+                try {
+                    engine.addDefrule(form.m_rule);
+                } catch (JessException je) {
+                    if (je.getLineNumber() == -1) {
+                        je.setLineNumber(form.m_line);
+                        je.setFilename(form.m_file.m_name);
+                    }
+                    throw je;
+                }
+            }
+        } finally {
+            compiler.flushUpdates(engine);
+        }
+    }
+
+    private static Object await(Future<?> future) throws JessException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new JessException("batch*", "Interrupted while loading", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof JessException)
+                throw (JessException) cause;
+            else if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else if (cause instanceof Error)
+                throw (Error) cause;
+            throw new JessException("batch*", "Error while loading", cause);
+        }
+    }
+
+    /**
+     * The implementation of the Jess language "batch*" command, which calls {@link #load}
+     * with all of its arguments as filenames.
+     *
+     * @param vv      the function call
+     * @param context the execution context
+     * @return the symbol TRUE
+     * @throws JessException if anything goes wrong
+     */
+    public Value call(ValueVector vv, Context context) throws JessException {
+        String[] filenames = new String[vv.size() - 1];
+        for (int i = 0; i < filenames.length; ++i)
+            filenames[i] = vv.get(i + 1).stringValue(context);
+        Rete engine = context.getEngine();
+        return load(filenames, Batch.defaultCharset(), engine, context,
+                    Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * One file's worth of forms.
+     */
+    private static class SourceFile {
+        final String m_name;
+        final List<Form> m_forms = new ArrayList<Form>();
+        boolean m_xml;
+
+        SourceFile(String name) {
+            m_name = name;
+        }
+    }
+
+    /**
+     * The tokens of one top-level form, and what became of it.
+     */
+    private static class Form {
+        final SourceFile m_file;
+        final JessToken[] m_tokens;
+        final JessToken m_end;
+        final int m_line;
+        String m_module;
+        HasLHS m_rule;
+        JessException m_error;
+
+        Form(SourceFile file, List<JessToken> tokens, JessToken next) throws JessException {
+            m_file = file;
+            m_tokens = tokens.toArray(new JessToken[tokens.size()]);
+            m_line = m_tokens[0].m_lineno;
+            m_end = ReaderTokenizer.finishToken(-1, "", next.m_start, next.m_start, next.m_lineno);
+        }
+
+        private String symbolAt(int index) {
+            if (m_tokens.length > index && m_tokens[index].m_ttype == JessToken.SYMBOL_TOK)
+                return m_tokens[index].m_sval;
+            return null;
+        }
+
+        /**
+         * The name of the construct or function, or null if this isn't a list.
+         */
+        String getHead() {
+            return m_tokens[0].m_ttype == '(' ? symbolAt(1) : null;
+        }
+
+        /**
+         * The module named in this construct's name, or null if the name is unqualified.
+         */
+        String getModule() {
+            String name = symbolAt(2);
+            int colons = name == null ? -1 : name.indexOf("::");
+            return colons == -1 ? null : name.substring(0, colons);
+        }
+    }
+
+    /**
+     * Replays the tokens of one form, and then reports end of file.
+     */
+    private static class FormTokenizer implements Tokenizer {
+        private Form m_form;
+        private int m_next;
+
+        void setForm(Form form) {
+            m_form = form;
+            m_next = 0;
+        }
+
+        public void reportNewlines(boolean b) {
+        }
+
+        public String readLine() {
+            return "";
+        }
+
+        public JessToken nextToken() {
+            if (m_next < m_form.m_tokens.length)
+                return m_form.m_tokens[m_next++];
+            return m_form.m_end;
+        }
+
+        public String discardToEOL() {
+            return "";
+        }
+
+        public int getStreamPos() {
+            return m_next < m_form.m_tokens.length ? m_form.m_tokens[m_next].m_start : m_form.m_end.m_start;
+        }
+
+        public void eatWhitespace() {
+        }
+    }
+}
@@ -377,6 +377,26 @@ public class Pattern implements ConditionalElement, ConditionalElementX, Seriali
         return false;
     }
 
+    /**
+     * Returns true if the given subslot is matched only by a blank
+     * variable, so that nothing ever looks at its contents.
+     */
+    boolean isBlankSubslot(int slot, int subslot) throws JessException {
+        String slotName = m_deft.getSlotName(slot);
+        boolean found = false;
+        for (Iterator it = m_allTests.iterator(); it.hasNext();) {
+            Test1 test = (Test1) it.next();
+            if (slotName.equals(test.m_slotName) && test.m_subIdx == subslot) {
+                Value v = test.m_slotValue;
+                if (test.m_test != TestBase.EQ || !(v instanceof Variable) ||
+                        !v.variableValue(null).startsWith(Tokenizer.BLANK_PREFIX))
+                    return false;
+                found = true;
+            }
+        }
+        return found;
+    }
+
     boolean[] getMultifieldFlags(int slot) throws JessException {
         boolean[] indexes = new boolean[getSlotLength(slot)];
 
@@ -510,17 +510,17 @@ public class RU implements Serializable {
                 clazz == Byte.class || clazz == Short.class || clazz == Integer.class ||
                 r == Byte.class || r == Short.class || r == Integer.class)
 
-            return new Value(((Number) obj).intValue(), INTEGER);
+            return ValueFactory.integer(((Number) obj).intValue());
 
         if (clazz == Long.TYPE || r == Long.TYPE ||
                 clazz == Long.class || r == Long.class)
-            return new LongValue(((Long) obj).longValue());
+            return ValueFactory.longInteger(((Long) obj).longValue());
 
         if (clazz == Double.TYPE || clazz == Float.TYPE ||
                 r == Double.TYPE || r == Float.TYPE ||
                 clazz == Double.class || clazz == Float.class ||
                 r == Double.class || r == Float.class)
-            return new Value(((Number) obj).doubleValue(), FLOAT);
+            return ValueFactory.floating(((Number) obj).doubleValue());
 
         if (clazz == Character.TYPE || r == Character.TYPE ||
                 clazz == Character.class || r == Character.class)
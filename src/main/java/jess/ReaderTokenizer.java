@@ -286,27 +286,39 @@ public class ReaderTokenizer implements Tokenizer {
      * String; '\n' means return CRLF; anything else is a one-character token.
      */
     private JessToken finishToken(int c, StringBuffer sb) throws JessException {
-        int tokenEnd = m_streamIndex;
-        JessToken jt = new JessToken(m_tokenStart, tokenEnd);
-        jt.m_lineno = m_line;
+        boolean needText = c == '"' || c == JessToken.REGEXP_TOK || c == JessToken.MULTILINE_COMMENT_TOK ||
+                           c == 0 || (c == EOF && sb.length() > 0);
+        return finishToken(c, needText ? sb.toString() : null, m_tokenStart, m_streamIndex, m_line);
+    }
+
+    /**
+     * Builds a token; shared with {@link BufferedTokenizer} so the two
+     * classify text identically. The text is only needed for strings,
+     * regular expressions, comments, and atoms (a tag of 0, or EOF
+     * with text pending); it's null otherwise, or empty at EOF.
+     */
+    static JessToken finishToken(int c, String text, int tokenStart, int tokenEnd, int line)
+            throws JessException {
+        JessToken jt = new JessToken(tokenStart, tokenEnd);
+        jt.m_lineno = line;
 
         switch (c) {
             // quoted string
             case '"':
                 jt.m_ttype = JessToken.STRING_TOK;
-                jt.m_sval = sb.toString();
+                jt.m_sval = text;
                 break;
 
                 // Regular expression
             case JessToken.REGEXP_TOK:
                 jt.m_ttype = JessToken.REGEXP_TOK;
-                jt.m_sval = sb.toString();
+                jt.m_sval = text;
                 break;
 
                 // Regular expression
             case JessToken.MULTILINE_COMMENT_TOK:
                 jt.m_ttype = JessToken.MULTILINE_COMMENT_TOK;
-                jt.m_sval = sb.toString();
+                jt.m_sval = text;
                 break;
 
                 // single-character tokens:
@@ -373,17 +385,17 @@ public class ReaderTokenizer implements Tokenizer {
 
                 // EOF encountered
             case EOF:
-                if (sb.length() == 0) {
+                if (text == null || text.length() == 0) {
                     jt.m_ttype = JessToken.NONE_TOK;
                     jt.m_sval = "EOF";
                     jt.m_end = jt.m_start;
                     break;
                 } else
-                    return finishToken(0, sb);
+                    return finishToken(0, text, tokenStart, tokenEnd, line);
 
                 // everything else
             case 0:
-                String sval = sb.toString();
+                String sval = text;
                 char ch = sval.charAt(0);
 
                 // VARIABLES
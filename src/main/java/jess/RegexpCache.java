@@ -0,0 +1,87 @@
+package jess;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded cache of compiled regular expressions, shared by all the
+ * callers of <tt>regexp</tt> in one engine, so expressions built from
+ * external data don't accumulate forever. Lookups never lock, and a hit
+ * writes to shared memory only the first time an entry is used after
+ * each eviction pass. When the cache is full, entries are evicted in
+ * "second chance" order: the oldest entry goes, unless it's been used
+ * since it was last looked at, in which case it moves to the back of
+ * the line. Each eviction takes amortized constant time.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+class RegexpCache {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final ConcurrentHashMap<String, Entry> m_patterns = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentLinkedQueue<Entry> m_order = new ConcurrentLinkedQueue<Entry>();
+    private final int m_capacity;
+
+    RegexpCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    RegexpCache(int capacity) {
+        m_capacity = capacity;
+    }
+
+    Pattern getPattern(String expression) {
+        Entry entry = m_patterns.get(expression);
+        if (entry == null) {
+            Entry created = new Entry(expression, Pattern.compile(expression));
+            entry = m_patterns.putIfAbsent(expression, created);
+            if (entry == null) {
+                m_order.offer(created);
+                if (m_patterns.size() > m_capacity)
+                    evict();
+                return created.m_pattern;
+            }
+        }
+        if (!entry.m_referenced)
+            entry.m_referenced = true;
+        return entry.m_pattern;
+    }
+
+    int size() {
+        return m_patterns.size();
+    }
+
+    void clear() {
+        // Queue first: an entry added in between is then at worst in the
+        // queue but not the map, which eviction skips
+        m_order.clear();
+        m_patterns.clear();
+    }
+
+    private void evict() {
+        while (m_patterns.size() > m_capacity) {
+            Entry entry = m_order.poll();
+            if (entry == null)
+                return;
+            if (entry.m_referenced) {
+                entry.m_referenced = false;
+                m_order.offer(entry);
+            } else {
+                m_patterns.remove(entry.m_expression, entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        final String m_expression;
+        final Pattern m_pattern;
+        volatile boolean m_referenced;
+
+        Entry(String expression, Pattern pattern) {
+            m_expression = expression;
+            m_pattern = pattern;
+        }
+    }
+}
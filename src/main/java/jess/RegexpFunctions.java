@@ -1,8 +1,6 @@
 package jess;
 
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Collections;
 import java.util.regex.Pattern;
 import java.io.Serializable;
 
@@ -28,10 +26,16 @@ class RegexpFunctions extends IntrinsicPackageImpl {
         else
             addFunction(new RegexpMatchStub(), ht);
     }
+
+    /**
+     * Returns true if the function is the built-in <tt>regexp</tt>.
+     */
+    static boolean isRegexpMatch(Userfunction function) {
+        return function instanceof RegexpMatch;
+    }
 }
 
 class RegexpMatch implements Userfunction, Serializable {
-    private static final Map s_patterns = Collections.synchronizedMap(new HashMap());
 
     public String getName() {
         return "regexp";
@@ -41,21 +45,10 @@ class RegexpMatch implements Userfunction, Serializable {
     public Value call(ValueVector vv, Context context) throws JessException {
         String expression = vv.get(1).stringValue(context);
         String trial = vv.get(2).stringValue(context);
-        Pattern regex = getPattern(expression);
+        Pattern regex = context.getEngine().getRegexpCache().getPattern(expression);
         boolean match = regex.matcher(trial).matches();
         return match ? Funcall.TRUE : Funcall.FALSE;
     }
-
-    private Pattern getPattern(String expression) {
-        synchronized(s_patterns) {
-            Pattern p = (Pattern) s_patterns.get(expression);
-            if (p == null) {
-                p = Pattern.compile(expression);
-                s_patterns.put(expression, p);
-            }
-            return p;
-        }
-    }
 }
 
 class RegexpMatchStub implements Userfunction, Serializable {
@@ -1,6 +1,7 @@
 package jess;
 
 import jess.tools.TextReader;
+import jess.xml.FactListWriter;
 import jess.factory.Factory;
 import jess.factory.FactoryImpl;
 import jess.server.LineNumberRecord;
@@ -8,6 +9,7 @@ import jess.server.LineNumberRecord;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>The central class in the Jess library. Executes the built Rete network,
@@ -76,6 +78,9 @@ public class Rete implements Serializable, JessListener {
     private transient TextReader m_tis = new TextReader(true);
     private transient Jesp m_jesp = initInternalParser();
     private transient JessEventSupport m_jes = new JessEventSupport(this);
+    private transient RegexpCache m_regexpCache = new RegexpCache();
+    private transient Metrics m_metrics = new Metrics(this);
+    private transient volatile Telemetry m_telemetry;
     private boolean m_resetGlobals = true;
     private Map<String, Value> m_storage = Collections.synchronizedMap(new HashMap<String, Value>());
     private FactList m_factList = new FactList();
@@ -125,6 +130,7 @@ public class Rete implements Serializable, JessListener {
         m_currentModule = peer.m_currentModule;
         m_javaClasses = peer.m_javaClasses;
         m_templatesByClass = peer.m_templatesByClass;
+        m_regexpCache = peer.m_regexpCache;
         setEventMask(0);
     }
 
@@ -166,7 +172,7 @@ public class Rete implements Serializable, JessListener {
         m_valueFactory = new ValueFactory();
         m_deffacts = Collections.synchronizedList(new ArrayList<Deffacts>());
         m_defglobals = Collections.synchronizedList(new ArrayList<Defglobal>());
-        m_functions = Collections.synchronizedMap(new HashMap<String, FunctionHolder>(101));
+        m_functions = new ConcurrentHashMap<String, FunctionHolder>(101);
         m_rules = Collections.synchronizedMap(new TreeMap<String, HasLHS>());
         m_modules = Collections.synchronizedMap(new HashMap<String, Defmodule>());
         m_javaClasses = Collections.synchronizedMap(new HashMap<String, String>());
@@ -190,16 +196,28 @@ public class Rete implements Serializable, JessListener {
     }
 
 	private ClassResearcher getDefaultClassResearcherInstance() {
-		try {
-			new Object() {{
-				// If this fails, then we can't use java.beans.Introspector,
-				// so must be on Android
-				java.beans.Introspector.decapitalize("Hello");
-			}};
+		if (hasIntrospector())
 			return new DefaultClassResearcher(this);
-		} catch (Throwable t) {
+		else
 			return new AndroidClassResearcher(this);
+	}
+
+	private static Boolean s_hasIntrospector;
+
+	private static synchronized boolean hasIntrospector() {
+		if (s_hasIntrospector == null) {
+			try {
+				new Object() {{
+					// If this fails, then we can't use java.beans.Introspector,
+					// so must be on Android
+					java.beans.Introspector.decapitalize("Hello");
+				}};
+				s_hasIntrospector = Boolean.TRUE;
+			} catch (Throwable t) {
+				s_hasIntrospector = Boolean.FALSE;
+			}
 		}
+		return s_hasIntrospector.booleanValue();
 	}
 
     /**
@@ -370,6 +388,7 @@ public class Rete implements Serializable, JessListener {
         m_factList.clear(this);
         m_rules.clear();
         m_agenda.clear();
+        m_metrics.clear();
         m_modules.clear();
         addDefmodule(new Defmodule());
         m_definstanceList.clear(this);
@@ -547,6 +566,37 @@ public class Rete implements Serializable, JessListener {
         return m_factList.assertFact(f, this, c);
     }
 
+    /**
+     * Assert a batch of facts, using the given execution context. This is
+     * equivalent to calling {@link #assertFact(Fact, Context)} on each fact
+     * in turn, but the working memory lock is taken only once, and facts
+     * asserted by rule LHSs are processed once at the end rather than
+     * after each fact. The same rules about ownership of the Fact objects
+     * apply.
+     *
+     * @param facts a collection of Fact objects
+     * @param c     an execution context
+     * @return the number of facts added to working memory; duplicates aren't counted
+     * @throws JessException if anything goes wrong
+     */
+
+    public int assertFacts(Collection<Fact> facts, Context c) throws JessException {
+        if (m_dynamicChecking)
+            for (Iterator<Fact> it = facts.iterator(); it.hasNext();)
+                it.next().checkConstraints();
+        return m_factList.assertFacts(facts, this, c);
+    }
+
+    /**
+     * Like {@link #assertFacts(Collection, Context)}, but constraints
+     * are checked fact by fact, and the progress object records how far
+     * the batch got if an exception is thrown.
+     */
+    int assertFacts(Collection<Fact> facts, Context c, FactList.BatchProgress progress)
+            throws JessException {
+        return m_factList.assertFacts(facts, this, c, m_dynamicChecking, progress);
+    }
+
     /**
      * Retract a fact represented as a string. Parses the String to
      * create a Fact object, then tries to remove that fact from
@@ -672,6 +722,42 @@ public class Rete implements Serializable, JessListener {
         return m_factList.modify(fact, slotNames, slotValues, context, this);
     }
 
+    /**
+     * Modify any number of slots in a fact, identifying the slots by
+     * index rather than by name. This function works for both plain
+     * and shadow facts, and is the fastest way to modify a fact if you
+     * modify facts of the same template repeatedly: look up the slot
+     * indexes once using {@link Deftemplate#getSlotIndex(String)}. Uses
+     * the global context to resolve the values.
+     *
+     * @param fact        a fact that's currently in working memory
+     * @param slotIndexes the indexes of some slots in the fact's template
+     * @param slotValues  new values for the given slots
+     * @return the fact argument
+     * @throws JessException if any slot index is bad or any other error occurs
+     */
+    public Fact modify(Fact fact, int[] slotIndexes, Value[] slotValues) throws JessException {
+        return modify(fact, slotIndexes, slotValues, m_globalContext);
+    }
+
+    /**
+     * Modify any number of slots in a fact, identifying the slots by
+     * index rather than by name. This function works for both plain
+     * and shadow facts. Uses the given context to resolve the values.
+     *
+     * @param fact        a fact that's currently in working memory
+     * @param slotIndexes the indexes of some slots in the fact's template
+     * @param slotValues  new values for the given slots
+     * @param context     the execution context
+     * @return the fact argument
+     * @throws JessException if any slot index is bad or any other error occurs
+     */
+    public Fact modify(Fact fact, int[] slotIndexes, Value[] slotValues, Context context) throws JessException {
+        if (m_dynamicChecking)
+            checkFact(fact, slotIndexes, slotValues);
+        return m_factList.modify(fact, slotIndexes, slotValues, context, this);
+    }
+
     /**
      * For internal use only. Ignores the shadow-fact nature of a fact.
      */
@@ -682,6 +768,24 @@ public class Rete implements Serializable, JessListener {
         return m_factList.modifyRegularFact(fact, slotNames, slotValues, engine, context);
     }
 
+    /**
+     * For internal use only. Ignores the shadow-fact nature of a fact.
+     */
+    Fact modifyRegularFact(Fact fact, int[] slotIndexes, Value[] slotValues, Rete engine,
+                           Context context) throws JessException {
+        if (m_dynamicChecking)
+            checkFact(fact, slotIndexes, slotValues);
+        return m_factList.modifyRegularFact(fact, slotIndexes, slotValues, engine, context);
+    }
+
+    private void checkFact(Fact fact, int[] slotIndexes, Value[] slotValues) throws JessException {
+        Deftemplate template = fact.getDeftemplate();
+        String[] slotNames = new String[slotIndexes.length];
+        for (int i=0; i<slotIndexes.length; ++i)
+            slotNames[i] = template.getSlotName(slotIndexes[i]);
+        checkFact(fact, slotNames, slotValues);
+    }
+
     private void checkFact(Fact fact, String[] slotNames, Value[] slotValues) throws JessException {
         Deftemplate template = fact.getDeftemplate();
         for (int i=0; i<slotNames.length; ++i) {
@@ -731,6 +835,32 @@ public class Rete implements Serializable, JessListener {
     }
 
 
+    /**
+     * Attach a write-ahead journal to this engine. A snapshot of the
+     * current contents of working memory is written first; from then
+     * on, every change to a regular fact is appended to the
+     * journal. Pass null to detach the current journal; a detached
+     * journal is not closed.
+     *
+     * @param journal the journal, or null
+     * @throws JessException if the snapshot can't be written
+     * @see FactJournal#recover
+     */
+    public void setFactJournal(FactJournal journal) throws JessException {
+        synchronized (getWorkingMemoryLock()) {
+            m_factList.setJournal(journal);
+        }
+    }
+
+    /**
+     * Return the write-ahead journal attached to this engine, if any.
+     *
+     * @return the journal, or null
+     */
+    public FactJournal getFactJournal() {
+        return m_factList.getJournal();
+    }
+
     /**
      * Return a marker for the current state of working memory. The marker can later be used to
      * retract all facts asserted since the marker was placed using resetToMark().
@@ -826,6 +956,14 @@ public class Rete implements Serializable, JessListener {
         m_factList.ppFacts(output, inXML);
     }
 
+    /**
+     * Write all the facts with the given head, or all the facts in working
+     * memory if the head is null, to a streaming XML fact-list document.
+     */
+    void writeFacts(String head, FactListWriter writer) throws JessException {
+        m_factList.writeFacts(head == null ? null : resolveName(head), writer);
+    }
+
     /**
      * Return an Iterator over all the deffacts in this engine.
      *
@@ -906,6 +1044,18 @@ public class Rete implements Serializable, JessListener {
         return m_definstanceList.listDefinstances(this).iterator();
     }
 
+    /**
+     * Return a read-only list of all the objects currently in working
+     * memory. The list is a snapshot, shared by all callers until an object
+     * is added or removed, so calling this repeatedly is cheap. It isn't
+     * affected by later changes to working memory.
+     *
+     * @return a read-only list of objects
+     */
+    public List<Object> getDefinstances() {
+        return m_definstanceList.listDefinstances(this);
+    }
+
     /**
      * Indicates whether a given object is being held in working memory. Will return true only for
      * the same physical object, and not for distinct but equal() objects.
@@ -1069,16 +1219,19 @@ public class Rete implements Serializable, JessListener {
     public Deftemplate createDeftemplate(String name)
             throws JessException {
 
-        Deftemplate deft = findDeftemplate(name);
+        // Parsers on other threads may be creating the same template
+        synchronized (m_modules) {
+            Deftemplate deft = findDeftemplate(name);
 
-        if (deft == null) {
-            // this is OK. Create an implied deftemplate
-            deft = addDeftemplate(new Deftemplate(name, "(Implied)", this));
-            deft.addMultiSlot(RU.DEFAULT_SLOT_NAME, Funcall.NILLIST, "ANY");
+            if (deft == null) {
+                // this is OK. Create an implied deftemplate
+                deft = addDeftemplate(new Deftemplate(name, "(Implied)", this));
+                deft.addMultiSlot(RU.DEFAULT_SLOT_NAME, Funcall.NILLIST, "ANY");
 
-        }
+            }
 
-        return deft;
+            return deft;
+        }
     }
 
     /**
@@ -1343,6 +1496,10 @@ public class Rete implements Serializable, JessListener {
      * @return The Userfunction object, if there is one.
      */
     final FunctionHolder findFunctionHolder(String name) {
+        FunctionHolder defined = m_functions.get(name);
+        if (defined != null)
+            return defined;
+
         synchronized(m_functions) {
             FunctionHolder fh = m_functions.get(name);
             if (fh == null) {
@@ -1456,6 +1613,7 @@ public class Rete implements Serializable, JessListener {
                 odr.remove(m_compiler.getRoot());
                 if (odr instanceof Defrule) {
                     m_agenda.removeActivationsOfRule((Defrule) odr, this);
+                    m_metrics.ruleRemoved((Defrule) odr);
                 }
                 broadcastEvent(JessEvent.DEFRULE | JessEvent.REMOVED, odr, m_globalContext);
             }
@@ -1720,6 +1878,42 @@ public class Rete implements Serializable, JessListener {
         return m_agenda.listActivationsInCurrentModule(this);
     }
 
+    int getAgendaSize(String moduleName) throws JessException {
+        return m_agenda.getActivationCount(this, moduleName);
+    }
+
+    /**
+     * Returns the counters this engine keeps for its rules, join nodes
+     * and agenda.
+     *
+     * @return this engine's Metrics
+     * @see Metrics
+     */
+    public Metrics getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * Start or stop recording a binary trace of rule firings, fact changes,
+     * agenda changes and join activity. Recording doesn't block the engine; see
+     * {@link Telemetry} for details. This method doesn't close the previous
+     * Telemetry object, if any.
+     *
+     * @param telemetry where to record events, or null to stop recording
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        m_telemetry = telemetry;
+    }
+
+    /**
+     * Return the Telemetry object this engine records events to, if any.
+     *
+     * @return the Telemetry object, or null
+     */
+    public Telemetry getTelemetry() {
+        return m_telemetry;
+    }
+
     /**
      * Return an Iterator over all the activations for the named
      * module. Asterisk ("*") is not accepted, in firing order. This is an
@@ -2155,6 +2349,8 @@ public class Rete implements Serializable, JessListener {
         m_tis = new TextReader(true);     
         m_jesp = initInternalParser();
         m_jes = new JessEventSupport(this);
+        m_regexpCache = new RegexpCache();
+        m_metrics = new Metrics(this);
         m_definstanceList.setEngine(this);
         m_globalContext.setEngine(this);
         m_classSource.setEngine(this);
@@ -2400,6 +2596,13 @@ public class Rete implements Serializable, JessListener {
     }
 
     Value add(Object o, Context context) throws JessException {
+        String templateName = templateNameForObject(o);
+        boolean dynamic = Definstance.acceptsPropertyChangeListeners(o, this);
+        return definstance(templateName, o, dynamic, context);
+    }
+
+    // The template add() uses for the given object, defined if need be
+    String templateNameForObject(Object o) throws JessException {
         String name = o.getClass().getName();
         // TODO Smart search through defclasses
         // TODO Synchronization
@@ -2409,13 +2612,16 @@ public class Rete implements Serializable, JessListener {
             if (findDeftemplate(shortName) == null)
                 defclass(shortName, name, null);
             templateName = shortName;
-        } 
-        boolean dynamic = Definstance.acceptsPropertyChangeListeners(o, this);
-        return definstance(templateName, o, dynamic, context);
+        }
+        return templateName;
     }
 
     /**
-     * Add a collection of objects to working memory. Calls add(Object) on each item in the collection.
+     * Add a collection of objects to working memory. The effect is the same
+     * as calling add(Object) on each item in the collection, but the shadow
+     * facts are all built first, then asserted together with
+     * {@link #assertFacts}, so the working memory lock is taken once and
+     * facts asserted by rule LHSs are processed once.
      *
      * @param c a collection of objects to be added to working memory
      * @throws JessException if anything goes wrong
@@ -2424,7 +2630,7 @@ public class Rete implements Serializable, JessListener {
      */
 
     public void addAll(Collection c) throws JessException {
-        addAll(c.iterator());
+        m_definstanceList.addAll(this, c, getGlobalContext());
     }
 
 
@@ -2438,9 +2644,30 @@ public class Rete implements Serializable, JessListener {
      */
 
     public void removeAll(Collection c) throws JessException {
-        Iterator it = c.iterator();
-        while (it.hasNext())
-            remove(it.next());
+        synchronized (getWorkingMemoryLock()) {
+            Iterator it = c.iterator();
+            while (it.hasNext())
+                remove(it.next());
+        }
+    }
+
+    /**
+     * Bring the shadow facts for a collection of objects up to date. Calls
+     * updateObject(Object) on each item in the collection while holding the
+     * working memory lock.
+     *
+     * @param c a collection of previously definstanced objects
+     * @throws JessException if any object isn't a definstanced object, or on error
+     * @see Rete#updateObject(Object)
+     */
+
+    public void updateAll(Collection c) throws JessException {
+        synchronized (getWorkingMemoryLock()) {
+            Context context = getGlobalContext();
+            Iterator it = c.iterator();
+            while (it.hasNext())
+                updateObject(it.next(), context);
+        }
     }
 
     /**
@@ -2452,8 +2679,10 @@ public class Rete implements Serializable, JessListener {
      */
 
     public void addAll(Iterator it) throws JessException {
+        List list = new ArrayList();
         while (it.hasNext())
-            add(it.next());
+            list.add(it.next());
+        addAll(list);
     }
 
     /**
@@ -2772,9 +3001,13 @@ public class Rete implements Serializable, JessListener {
         s_factory = f;
     }
 
+    ClassSource getClassSource() {
+        return m_classSource;
+    }
+
     private void loadScriptlib() {
         try {
-            batch(getLibraryPath());                        
+            ScriptLibrary.load(this, getLibraryPath());
         } catch (JessException je) {
             // TODO Explain the problem!
             je.printStackTrace();
@@ -3258,7 +3491,8 @@ public class Rete implements Serializable, JessListener {
      * Token.size() method to check how many supporting Facts are in a
      * Token, and the Token.fact() method to check each supporting
      * Fact in turn. This is a fast operation, taking O(ln N) time,
-     * where N is the number of facts that have logical support.
+     * where N is the number of facts that have logical support. The
+     * list is a copy, which the caller is free to modify.
      *
      * @param fact a fact of interest
      * @return a list of supporting Token objects, or null if there is
@@ -3274,9 +3508,8 @@ public class Rete implements Serializable, JessListener {
 
     /**
      * Returns a list of Fact objects that receive logical support
-     * from the argument.  This method is potentially expensive, as it
-     * takes time proportional to O(N), where N is the number of facts
-     * currently receiving logical support of any kind.
+     * from the argument. The supported facts are indexed by supporter,
+     * so this takes time proportional to the number of facts returned.
      *
      * @param supporter a fact of interest
      * @return a list of zero or more Fact objects
@@ -3436,6 +3669,10 @@ public class Rete implements Serializable, JessListener {
         m_valueFactory = factory;
     }
 
+    RegexpCache getRegexpCache() {
+        return m_regexpCache;
+    }
+
     long getNextNodeKey() {
         return m_compiler.getNextNodeKey();
     }
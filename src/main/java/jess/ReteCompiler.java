@@ -23,10 +23,14 @@ class ReteCompiler implements Serializable {
     private static Accelerator m_accelerator;
     private static boolean m_acceleratorChecked;
     private int m_nextNodeKey;
+    private transient Set m_deferredRoots;
+    private transient List m_deferredRules;
 
     void clear() {
         m_root = new NodeRoot();
         m_nextNodeKey = 0;
+        m_deferredRoots = null;
+        m_deferredRules = null;
     }
 
     /**
@@ -98,6 +102,13 @@ class ReteCompiler implements Serializable {
         // Now remove bindings that won't be used at runtime
         r.cullUnusedBindings();
 
+        // While updates are deferred, just remember what needs updating
+        if (m_deferredRoots != null) {
+            m_deferredRoots.addAll(uniqueRoots);
+            m_deferredRules.add(r);
+            return;
+        }
+
         //Tell the engine to update this rule if the fact list isn't empty
         try {
             engine.updateNodes(uniqueRoots);
@@ -106,6 +117,39 @@ class ReteCompiler implements Serializable {
         }
     }
 
+    /**
+     * Stop updating each rule with the existing facts as it's added.
+     * Instead, the roots of all the rules added from now on are collected
+     * until {@link #flushUpdates} brings them all up to date in one pass.
+     */
+    synchronized void deferUpdates() {
+        if (m_deferredRoots == null) {
+            m_deferredRoots = new HashSet();
+            m_deferredRules = new ArrayList();
+        }
+    }
+
+    /**
+     * Present the existing facts to every rule added since
+     * {@link #deferUpdates} was called, and go back to updating each rule
+     * as it's added.
+     */
+    synchronized void flushUpdates(Rete engine) throws JessException {
+        Set roots = m_deferredRoots;
+        List rules = m_deferredRules;
+        m_deferredRoots = null;
+        m_deferredRules = null;
+        if (roots == null)
+            return;
+
+        try {
+            engine.updateNodes(roots);
+        } finally {
+            for (Iterator it = rules.iterator(); it.hasNext();)
+                ((HasLHS) it.next()).setOld();
+        }
+    }
+
     private int fullPatternCount(ConditionalElementX ce) {
         int count = 0;
         for (int i=0; i<ce.getGroupSize(); ++i) {
@@ -389,7 +433,12 @@ class ReteCompiler implements Serializable {
 
             // Multifields that needs separating out?
             else  {
-                last = last.mergeSuccessor(new Node1MTMF(slot, p.getMultifieldFlags(slot)), sink);
+                boolean[] flags = p.getMultifieldFlags(slot);
+                if (Node1MTMEM.isMembershipPattern(flags)) {
+                    boolean blanks = p.isBlankSubslot(slot, 0) && p.isBlankSubslot(slot, 2);
+                    last = last.mergeSuccessor(new Node1MTMEM(slot, blanks), sink);
+                } else
+                    last = last.mergeSuccessor(new Node1MTMF(slot, flags), sink);
             }
         }
 
@@ -815,7 +864,10 @@ class ReteCompiler implements Serializable {
     private Node addSimpleTest(Node last, NodeSink r,
                                int testIdx, Test1 test, Value v)
             throws JessException {
-        Node1 node;
+        Node1 node = Node1TRX.forTest(test.m_test, v);
+        if (node != null)
+            return last.mergeSuccessor(node, r);
+
         switch (test.m_test) {
             case Test1.EQ:
                 switch (test.m_subIdx) {
@@ -887,7 +939,7 @@ class ReteCompiler implements Serializable {
         m_root = probe;
     }
 
-    public long getNextNodeKey() {
+    public synchronized long getNextNodeKey() {
         return m_nextNodeKey++;
     }
 }
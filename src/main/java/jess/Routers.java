@@ -6,6 +6,7 @@ import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manage input and output routers
@@ -22,12 +23,16 @@ import java.util.Map;
  * read and readline , so when you create a router, you need to specify
  * how it should act.
  * <P>
+ * Output routers are looked up on every <tt>printout</tt>, so they're kept
+ * in a concurrent map and read without locking; changes to them are still
+ * made while holding this object's lock.
+ * <P>
  * (C) 2013 Sandia Corporation<br>
  */
 
 class Routers {
 
-    private final Map m_outRouters = new HashMap(13);
+    private final Map<String, Writer> m_outRouters = new ConcurrentHashMap<String, Writer>(13);
     private final Map m_inRouters = new HashMap(13);
     private final Map m_inWrappers = new HashMap(13);
     private final Map m_inModes = new HashMap(13);
@@ -68,15 +73,19 @@ class Routers {
     }
 
     synchronized void addOutputRouter(String s, Writer os) {
-        m_outRouters.put(s, os);
+        // The map can't hold null; a null router is the same as none
+        if (os == null)
+            m_outRouters.remove(s);
+        else
+            m_outRouters.put(s, os);
     }
 
     synchronized void removeOutputRouter(String s) {
         m_outRouters.remove(s);
     }
 
-    synchronized Writer getOutputRouter(String s) {
-        return (Writer) m_outRouters.get(s);
+    Writer getOutputRouter(String s) {
+        return m_outRouters.get(s);
     }
 
     synchronized PrintWriter getErrStream() {
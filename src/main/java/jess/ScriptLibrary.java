@@ -0,0 +1,216 @@
+package jess;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.util.*;
+
+/**
+ * A parsed copy of the script library, kept once per JVM so that new
+ * engines don't have to parse <tt>scriptlib.clp</tt> again. The first
+ * engine to load a given library parses it as usual; the deffunctions
+ * it defined are then recorded, along with its <tt>import</tt> and
+ * <tt>load-package</tt> calls. Later engines get their own copies of
+ * the recorded deffunctions, and make the same calls themselves, in the
+ * same order as the file.
+ * <p/>
+ * A library is recorded only if every top-level form in it is a
+ * <tt>deffunction</tt>, an <tt>import</tt> or a <tt>load-package</tt>
+ * with a literal argument, or a <tt>try</tt> containing only the last
+ * two. A library that does anything else (defining rules or templates,
+ * say, or calling a function like <tt>defadvice</tt> or <tt>watch</tt>
+ * for its side effects), or fails to load, is loaded with
+ * {@link Rete#batch(String)} every time, as before.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+final class ScriptLibrary {
+    private static ScriptLibrary s_library;
+
+    private final String m_path;
+    private final ClassLoader m_loader;
+    private final Form[] m_forms;
+
+    private ScriptLibrary(String path, ClassLoader loader, List<Form> forms) {
+        m_path = path;
+        m_loader = loader;
+        m_forms = forms.toArray(new Form[forms.size()]);
+    }
+
+    /**
+     * Load the script library at the given path into the engine, from
+     * the recorded copy if there is one.
+     */
+    static void load(Rete engine, String path) throws JessException {
+        ClassLoader loader = engine.getClassSource().getAppObjectClass().getClassLoader();
+        ScriptLibrary library;
+        synchronized (ScriptLibrary.class) {
+            library = s_library;
+        }
+
+        if (library != null && library.m_path.equals(path) && library.m_loader == loader) {
+            library.install(engine);
+            return;
+        }
+
+        List<Form> forms = scan(engine, path);
+        engine.batch(path);
+        if (forms != null && record(engine, forms)) {
+            synchronized (ScriptLibrary.class) {
+                s_library = new ScriptLibrary(path, loader, forms);
+            }
+        }
+    }
+
+    // **********************************************************************
+    // Recording
+    // **********************************************************************
+
+    /**
+     * Returns the library's top-level forms, or null if any of them is
+     * something other than the forms this class knows how to replay.
+     */
+    private static List<Form> scan(Rete engine, String path) throws JessException {
+        String charset = Batch.defaultCharset();
+        PushbackReader reader = null;
+        try {
+            reader = Batch.findDocument(engine, path, charset);
+            if (Batch.isXMLDocument(reader))
+                return null;
+            Tokenizer tokens = Batch.openTokenizer(engine, path, charset, reader);
+            List<Form> forms = new ArrayList<Form>();
+            int group = 0;
+            for (JessToken token = nextToken(tokens); !token.isEOF(); token = nextToken(tokens)) {
+                if (token.m_ttype != '(' || !scanForm(tokens, forms, 0, ++group))
+                    return null;
+            }
+            return forms;
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Scan one form, whose opening parenthesis has been read. Forms
+     * inside a <tt>try</tt> get the try's group number, so that an
+     * error in one skips the rest of the group.
+     */
+    private static boolean scanForm(Tokenizer tokens, List<Form> forms, int tryGroup, int group)
+            throws JessException {
+        JessToken head = nextToken(tokens);
+        if (head.m_ttype != JessToken.SYMBOL_TOK)
+            return false;
+        String name = head.m_sval;
+
+        if (name.equals("try") && tryGroup == 0) {
+            for (JessToken token = nextToken(tokens); token.m_ttype != ')'; token = nextToken(tokens)) {
+                if (token.m_ttype == '(') {
+                    if (!scanForm(tokens, forms, group, group))
+                        return false;
+                } else if (token.m_ttype == JessToken.SYMBOL_TOK && token.m_sval.equals("catch")) {
+                    return skipRest(tokens);
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        JessToken arg = nextToken(tokens);
+        if (arg.m_ttype != JessToken.SYMBOL_TOK)
+            return false;
+        if (name.equals("deffunction") && tryGroup == 0) {
+            forms.add(new Form(name, arg.m_sval, 0));
+            return skipRest(tokens);
+        } else if (name.equals("import") || name.equals("load-package")) {
+            forms.add(new Form(name, arg.m_sval, tryGroup));
+            return nextToken(tokens).m_ttype == ')';
+        }
+        return false;
+    }
+
+    // Skip to the end of the current form
+    private static boolean skipRest(Tokenizer tokens) throws JessException {
+        int depth = 1;
+        while (depth > 0) {
+            JessToken token = nextToken(tokens);
+            if (token.isEOF())
+                return false;
+            if (token.m_ttype == '(')
+                ++depth;
+            else if (token.m_ttype == ')')
+                --depth;
+        }
+        return true;
+    }
+
+    private static JessToken nextToken(Tokenizer tokens) throws JessException {
+        JessToken token = tokens.nextToken();
+        while (token.isComment())
+            token = tokens.nextToken();
+        return token;
+    }
+
+    /**
+     * Fill in each deffunction form with a copy of the function the
+     * engine ended up with.
+     */
+    private static boolean record(Rete engine, List<Form> forms) throws JessException {
+        for (Form form : forms) {
+            if (form.m_name.equals("deffunction")) {
+                Userfunction uf = engine.findUserfunction(form.m_arg);
+                if (!(uf instanceof Deffunction))
+                    return false;
+                form.m_deffunction = ((Deffunction) uf).copy();
+            }
+        }
+        return true;
+    }
+
+    // **********************************************************************
+    // Installing
+    // **********************************************************************
+
+    private void install(Rete engine) throws JessException {
+        Context context = engine.getGlobalContext();
+        int failedGroup = 0;
+        for (int i = 0; i < m_forms.length; i++) {
+            Form form = m_forms[i];
+            if (form.m_deffunction != null) {
+                engine.addUserfunction(form.m_deffunction.copy());
+            } else if (form.m_group == 0 || form.m_group != failedGroup) {
+                try {
+                    new Funcall(form.m_name, engine).arg(new Value(form.m_arg, RU.SYMBOL)).execute(context);
+                } catch (JessException je) {
+                    if (form.m_group == 0)
+                        throw je;
+                    failedGroup = form.m_group;
+                }
+            }
+        }
+    }
+
+    /**
+     * One top-level form of the library, or one call inside a
+     * <tt>try</tt>.
+     */
+    private static final class Form {
+        final String m_name;
+        final String m_arg;
+        final int m_group;
+        Deffunction m_deffunction;
+
+        Form(String name, String arg, int group) {
+            m_name = name;
+            m_arg = arg;
+            m_group = group;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package jess;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The symbol-interning table behind a {@link ValueFactory}. Lookups
+ * don't lock, and symbols are only weakly held, so transient symbols
+ * created from external data can be garbage collected once nothing
+ * else refers to them. Each interned symbol carries a precomputed hash.
+ * A table holds at most one live symbol per name, so two symbols from
+ * the same table are equal exactly when they are the same object.
+ * <P>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+class SymbolTable implements Serializable {
+    private transient ConcurrentHashMap<String, SymbolRef> m_symbols = new ConcurrentHashMap<String, SymbolRef>();
+    private transient ReferenceQueue<SymbolValue> m_queue = new ReferenceQueue<SymbolValue>();
+
+    Value intern(String name) throws JessException {
+        SymbolRef ref = m_symbols.get(name);
+        SymbolValue symbol;
+        if (ref != null && (symbol = ref.get()) != null)
+            return symbol;
+
+        expungeStaleEntries();
+        SymbolValue created = new SymbolValue(name, this);
+        SymbolRef newRef = new SymbolRef(name, created, m_queue);
+        while (true) {
+            ref = m_symbols.putIfAbsent(name, newRef);
+            if (ref == null)
+                return created;
+            if ((symbol = ref.get()) != null)
+                return symbol;
+            // The existing entry was collected; replace it
+            if (m_symbols.replace(name, ref, newRef))
+                return created;
+        }
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return m_symbols.size();
+    }
+
+    private void expungeStaleEntries() {
+        SymbolRef ref;
+        while ((ref = (SymbolRef) m_queue.poll()) != null)
+            m_symbols.remove(ref.m_name, ref);
+    }
+
+    private Object readResolve() {
+        return new SymbolTable();
+    }
+
+    private static class SymbolRef extends WeakReference<SymbolValue> {
+        final String m_name;
+
+        SymbolRef(String name, SymbolValue symbol, ReferenceQueue<SymbolValue> queue) {
+            super(symbol, queue);
+            m_name = name;
+        }
+    }
+}
+
+/**
+ * A symbol interned in a {@link SymbolTable}.
+ */
+
+class SymbolValue extends Value implements Serializable {
+    private final int m_hash;
+    private final transient SymbolTable m_table;
+
+    SymbolValue(String name, SymbolTable table) throws JessException {
+        super(name, RU.SYMBOL);
+        m_hash = name.hashCode();
+        m_table = table;
+    }
+
+    public boolean equals(Value v) {
+        if (this == v)
+            return true;
+        if (v instanceof SymbolValue) {
+            SymbolValue s = (SymbolValue) v;
+            // Interning leaves one live instance per name in a table
+            if (m_table != null && m_table == s.m_table)
+                return false;
+            if (m_hash != s.m_hash)
+                return false;
+        }
+        return super.equals(v);
+    }
+
+    public int hashCode() {
+        return m_hash;
+    }
+}
@@ -0,0 +1,406 @@
+package jess;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A binary trace of what an engine does -- rules fired, facts asserted,
+ * modified and retracted, activations created and cancelled, tokens
+ * joined in the Rete network -- written to
+ * a stream by a background thread. Unlike the debugger's event socket,
+ * recording an event never takes a lock, formats a String, or waits for
+ * I/O: the engine thread writes a fixed-size record into a ring buffer and
+ * moves on. If the buffer is full, the record is discarded and counted.
+ * Events can also be sampled, so that only one in every <i>n</i> is
+ * recorded.
+ * <pre>
+ * Telemetry telemetry = new Telemetry(socket.getOutputStream());
+ * engine.setTelemetry(telemetry);
+ * ...
+ * engine.setTelemetry(null);
+ * telemetry.close();
+ * </pre>
+ * <p/>
+ * The stream is a sequence of big-endian records, each beginning with an
+ * int record type. Event records are 32 bytes long:
+ * <pre>
+ * int  type         one of the event type constants
+ * int  name         the rule, template or join node, as a name id
+ * long time         System.nanoTime() when the event happened
+ * long id           the fact id; for RULE_FIRED, the id of the first fact in the activation;
+ *                   for NODE_ACTIVITY, the id of the newest fact in the arriving token
+ * long value        for RULE_FIRED, the time spent in the right-hand side, in nanoseconds;
+ *                   for NODE_ACTIVITY, the number of tokens in the other memory it was tested against
+ * </pre>
+ * The first time a name id appears, it's preceded by a {@link #NAME}
+ * record: the type, the int id, and the name as written by
+ * {@link DataOutputStream#writeUTF}. {@link #print} turns a stream back
+ * into text.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ *
+ * @see Rete#setTelemetry
+ */
+
+public class Telemetry {
+    /** Record type: defines a name id. */
+    public static final int NAME = 0;
+    /** Event type: a rule's right-hand side was executed. */
+    public static final int RULE_FIRED = 1;
+    /** Event type: a fact was added to working memory. */
+    public static final int FACT_ASSERTED = 2;
+    /** Event type: a fact was modified. */
+    public static final int FACT_MODIFIED = 3;
+    /** Event type: a fact was removed from working memory. */
+    public static final int FACT_RETRACTED = 4;
+    /** Event type: an activation was placed on the agenda. */
+    public static final int ACTIVATION_CREATED = 5;
+    /** Event type: an activation was removed from the agenda without firing. */
+    public static final int ACTIVATION_CANCELLED = 6;
+    /** Event type: a token arrived at a join node and was tested against the other memory. */
+    public static final int NODE_ACTIVITY = 7;
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+    private static final String[] TYPE_NAMES = {
+        "NAME", "RULE_FIRED", "FACT_ASSERTED", "FACT_MODIFIED", "FACT_RETRACTED",
+        "ACTIVATION_CREATED", "ACTIVATION_CANCELLED", "NODE_ACTIVITY"
+    };
+    private static final int LONGS_PER_RECORD = 4;
+
+    private final DataOutputStream m_out;
+    private final int m_mask;
+    private final long[] m_records;
+    private final AtomicLongArray m_sequences;
+    private final AtomicLong m_tail = new AtomicLong();
+    private final LongAdder m_recorded = new LongAdder();
+    private final LongAdder m_dropped = new LongAdder();
+    private final LongAdder m_skipped = new LongAdder();
+    private final ConcurrentHashMap<String, Integer> m_nameIds = new ConcurrentHashMap<String, Integer>();
+    private final List<String> m_names = new ArrayList<String>();
+    private final long m_flushInterval;
+    private final Thread m_drainer;
+    private volatile int m_sampleInterval = 1;
+    private volatile IOException m_error;
+    private volatile boolean m_closed;
+    private volatile boolean m_failed;
+
+    // Written only by the drain thread
+    private long m_head;
+    private int m_namesWritten;
+
+    /**
+     * Create a Telemetry stream with the default buffer size and flush interval.
+     * @param out the stream to write records to
+     */
+    public Telemetry(OutputStream out) {
+        this(out, DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Create a Telemetry stream.
+     * @param out the stream to write records to
+     * @param capacity the number of records the buffer can hold; rounded up to a power of two
+     * @param flushInterval flush the stream once a record has waited this many milliseconds
+     */
+    public Telemetry(OutputStream out, int capacity, long flushInterval) {
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        m_out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        m_mask = size - 1;
+        m_records = new long[size * LONGS_PER_RECORD];
+        m_sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            m_sequences.set(i, i);
+        m_flushInterval = Math.max(1, flushInterval);
+        m_drainer = new Thread(new Drainer(), "Jess telemetry");
+        m_drainer.setDaemon(true);
+        m_drainer.start();
+    }
+
+    /**
+     * Record only about one in every <i>n</i> events, chosen at random.
+     * @param n the sampling interval; 1, the default, records every event
+     */
+    public void setSampleInterval(int n) {
+        m_sampleInterval = Math.max(1, n);
+    }
+
+    public int getSampleInterval() {
+        return m_sampleInterval;
+    }
+
+    /**
+     * Returns the number of events placed in the buffer.
+     * @return the number of events recorded
+     */
+    public long getRecordedCount() {
+        return m_recorded.sum();
+    }
+
+    /**
+     * Returns the number of events discarded because the buffer was full.
+     * @return the number of events dropped
+     */
+    public long getDroppedCount() {
+        return m_dropped.sum();
+    }
+
+    /**
+     * Returns the number of events not recorded because of sampling.
+     * @return the number of events skipped
+     */
+    public long getSkippedCount() {
+        return m_skipped.sum();
+    }
+
+    /**
+     * Write out everything recorded so far, stop the drain thread, and close
+     * the stream. If writing failed at any point, the stream is still
+     * closed, and the first error is thrown.
+     * @throws IOException if the stream failed
+     */
+    public void close() throws IOException {
+        if (m_closed)
+            return;
+        m_closed = true;
+        LockSupport.unpark(m_drainer);
+        try {
+            m_drainer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = m_error;
+        try {
+            m_out.close();
+        } catch (IOException ioe) {
+            if (error == null)
+                error = ioe;
+        }
+        if (error != null)
+            throw error;
+    }
+
+    // **********************************************************************
+    // Recording
+    // **********************************************************************
+
+    void factEvent(int type, Fact fact) {
+        record(type, fact.getName(), fact.getFactId(), 0);
+    }
+
+    void activationEvent(int type, Defrule rule, Token token) {
+        record(type, rule.getName(), firstFactId(token), 0);
+    }
+
+    /**
+     * Returns a start time to pass to {@link #ruleFired}.
+     */
+    long fireStarted() {
+        return System.nanoTime();
+    }
+
+    void ruleFired(Defrule rule, Token token, long start) {
+        record(RULE_FIRED, rule.getName(), firstFactId(token), System.nanoTime() - start);
+    }
+
+    void nodeActivity(Node2 node, Token token, int probes) {
+        if (m_closed || m_failed)
+            return;
+        record(NODE_ACTIVITY, node.getTelemetryName(), token != null ? token.topFact().getFactId() : -1, probes);
+    }
+
+    private static long firstFactId(Token token) {
+        return token != null && token.size() > 0 ? token.fact(0).getFactId() : -1;
+    }
+
+    private void record(int type, String name, long id, long value) {
+        if (m_closed || m_failed)
+            return;
+        int interval = m_sampleInterval;
+        if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+            m_skipped.increment();
+            return;
+        }
+        long time = System.nanoTime();
+        int nameId = nameId(name);
+
+        while (true) {
+            long tail = m_tail.get();
+            int index = (int) tail & m_mask;
+            long sequence = m_sequences.get(index);
+            if (sequence == tail) {
+                if (m_tail.compareAndSet(tail, tail + 1)) {
+                    int base = index * LONGS_PER_RECORD;
+                    m_records[base] = ((long) type << 32) | (nameId & 0xFFFFFFFFL);
+                    m_records[base + 1] = time;
+                    m_records[base + 2] = id;
+                    m_records[base + 3] = value;
+                    m_sequences.set(index, tail + 1);
+                    m_recorded.increment();
+                    return;
+                }
+            } else if (sequence < tail) {
+                // Full
+                m_dropped.increment();
+                return;
+            }
+        }
+    }
+
+    private int nameId(String name) {
+        Integer id = m_nameIds.get(name);
+        if (id != null)
+            return id.intValue();
+        synchronized (m_names) {
+            id = m_nameIds.get(name);
+            if (id == null) {
+                id = new Integer(m_names.size());
+                m_names.add(name);
+                m_nameIds.put(name, id);
+            }
+            return id.intValue();
+        }
+    }
+
+    private class Drainer implements Runnable {
+        public void run() {
+            long intervalNanos = m_flushInterval * 1000000L;
+            long oldestUnflushed = 0;
+            boolean unflushed = false;
+            try {
+                while (true) {
+                    int index = (int) m_head & m_mask;
+                    if (m_sequences.get(index) == m_head + 1) {
+                        int base = index * LONGS_PER_RECORD;
+                        long header = m_records[base];
+                        long time = m_records[base + 1];
+                        long id = m_records[base + 2];
+                        long value = m_records[base + 3];
+                        m_sequences.set(index, m_head + m_mask + 1);
+                        ++m_head;
+                        write((int) (header >>> 32), (int) header, time, id, value);
+                        if (!unflushed) {
+                            unflushed = true;
+                            oldestUnflushed = System.nanoTime();
+                        }
+                        continue;
+                    }
+
+                    if (m_closed && m_head == m_tail.get()) {
+                        m_out.flush();
+                        return;
+                    }
+
+                    if (unflushed) {
+                        long wait = intervalNanos - (System.nanoTime() - oldestUnflushed);
+                        if (wait <= 0) {
+                            m_out.flush();
+                            unflushed = false;
+                        } else {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else if (m_head == m_tail.get()) {
+                        LockSupport.parkNanos(intervalNanos);
+                    } else {
+                        // A writer has claimed the slot but not filled it yet
+                        Thread.yield();
+                    }
+                }
+            } catch (IOException ioe) {
+                // Stop recording, but leave closing the stream to close()
+                m_error = ioe;
+                m_failed = true;
+            }
+        }
+
+        private void write(int type, int nameId, long time, long id, long value) throws IOException {
+            while (m_namesWritten <= nameId) {
+                String name;
+                synchronized (m_names) {
+                    name = m_names.get(m_namesWritten);
+                }
+                m_out.writeInt(NAME);
+                m_out.writeInt(m_namesWritten);
+                m_out.writeUTF(name);
+                ++m_namesWritten;
+            }
+            m_out.writeInt(type);
+            m_out.writeInt(nameId);
+            m_out.writeLong(time);
+            m_out.writeLong(id);
+            m_out.writeLong(value);
+        }
+    }
+
+    // **********************************************************************
+    // Reading
+    // **********************************************************************
+
+    /**
+     * Translate a stream written by a Telemetry object into text, one event
+     * per line. Times are shown in microseconds since the first event.
+     * @param in the binary stream
+     * @param out where to write the text
+     * @throws IOException if the stream can't be read or is malformed
+     */
+    public static void print(InputStream in, Writer out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        PrintWriter pw = new PrintWriter(out);
+        List<String> names = new ArrayList<String>();
+        long origin = 0;
+        boolean first = true;
+        while (true) {
+            int type;
+            try {
+                type = data.readInt();
+            } catch (EOFException eof) {
+                break;
+            }
+            int nameId = data.readInt();
+            if (type == NAME) {
+                String name = data.readUTF();
+                while (names.size() <= nameId)
+                    names.add(null);
+                names.set(nameId, name);
+                continue;
+            }
+            if (type < 0 || type >= TYPE_NAMES.length)
+                throw new IOException("Bad telemetry record type " + type);
+            long time = data.readLong();
+            long id = data.readLong();
+            long value = data.readLong();
+            if (first) {
+                origin = time;
+                first = false;
+            }
+            pw.print((time - origin) / 1000);
+            pw.print(' ');
+            pw.print(TYPE_NAMES[type]);
+            pw.print(' ');
+            pw.print(nameId < names.size() ? names.get(nameId) : "#" + nameId);
+            pw.print(" f-");
+            pw.print(id);
+            if (type == RULE_FIRED) {
+                pw.print(' ');
+                pw.print(value);
+                pw.print("ns");
+            } else if (type == NODE_ACTIVITY) {
+                pw.print(' ');
+                pw.print(value);
+                pw.print(" probes");
+            }
+            pw.println();
+        }
+        pw.flush();
+    }
+}
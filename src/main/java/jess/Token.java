@@ -31,12 +31,91 @@ public class Token implements Serializable {
     private int m_size;
     private Fact m_fact;
 
+    // Array-backed layout: when non-null, the facts of this token
+    // are m_facts.m_facts[0 .. m_size-1] and m_parent is unused
+    private FactArray m_facts;
 
-    // Needed for "logical" CE.
+    // Needed for "logical" CE. Array-backed tokens don't keep a
+    // parent, so one is created on demand.
     Token getParent() {
+        if (m_facts != null)
+            return m_size > 1 ? prefix(m_size - 1) : null;
         return m_parent;
     }
 
+    /**
+     * Returns a token holding the leading <code>size</code> facts of
+     * this one.
+     */
+    final Token prefix(int size) {
+        if (size >= m_size)
+            return this;
+
+        if (m_facts != null)
+            return new Token(m_facts, size);
+
+        Token where = this;
+        while (where.m_size > size)
+            where = where.m_parent;
+        return where;
+    }
+
+    // Array-backed prefix of another token
+    private Token(FactArray facts, int size) {
+        Fact[] array = facts.m_facts;
+        m_facts = facts;
+        m_size = size;
+        m_fact = array[size - 1];
+        m_sortcode = array[0].getFactId();
+        m_time = m_totalTime = array[0].getTime();
+        for (int i=1; i<size; ++i) {
+            int time = array[i].getTime();
+            m_sortcode = (m_sortcode << 3) + array[i].getFactId();
+            m_totalTime += time;
+            m_time = Math.max(time, m_time);
+        }
+    }
+
+    /**
+     * Returns the sortcode that the leading <code>size</code> facts of
+     * this token would have as a token of their own.
+     */
+    final int prefixSortcode(int size) {
+        if (size >= m_size)
+            return m_sortcode;
+
+        if (m_facts != null) {
+            Fact[] facts = m_facts.m_facts;
+            int code = facts[0].getFactId();
+            for (int i=1; i<size; ++i)
+                code = (code << 3) + facts[i].getFactId();
+            return code;
+        }
+
+        Token where = this;
+        while (where.m_size > size)
+            where = where.m_parent;
+        return where.m_sortcode;
+    }
+
+    /**
+     * Returns true if any fact in this token has the given fact-id.
+     */
+    final boolean containsFactId(int id) {
+        if (m_facts != null) {
+            Fact[] facts = m_facts.m_facts;
+            for (int i=m_size-1; i>=0; --i)
+                if (facts[i].getFactId() == id)
+                    return true;
+            return false;
+        }
+
+        for (Token t = this; t != null; t = t.m_parent)
+            if (t.m_fact.getFactId() == id)
+                return true;
+        return false;
+    }
+
     /**
      * Return the last fact in the Token (the "most recent" one). This
      * may not be a Fact from working memory, but rather a "view" of a
@@ -71,6 +150,8 @@ public class Token implements Serializable {
             return m_fact;
         else if (j < 0)
             throw new IndexOutOfBoundsException("Internal error: fact index " + i + " too large for token size " + m_size);
+        else if (m_facts != null && j > 1)
+            return m_facts.m_facts[i];
 
         Token where = this;
         while (--j > 0)
@@ -102,12 +183,34 @@ public class Token implements Serializable {
     }
 
 
+    /**
+     * Construct a token containing a single Fact, using the array-backed
+     * layout. Tokens extended from an array-backed token are array-backed
+     * as well; they keep their facts in a single array, sharing it with
+     * the token they were extended from whenever possible, so that
+     * {@link #fact(int)} and token comparisons don't have to walk a chain
+     * of parent tokens.
+     * @param firstFact the first fact
+     * @param capacity the initial size of the fact array
+     * @throws JessException if anything goes wrong
+     * @see jess.factory.ArrayFactoryImpl
+     */
+
+    public Token(Fact firstFact, int capacity) throws JessException {
+        this(firstFact);
+        m_facts = new FactArray(Math.max(capacity, 1));
+        m_facts.claim(0, firstFact);
+    }
+
     /**
      * Create a new Token containing the same data as an old one
      */
     public Token(Token t, Fact newFact) throws JessException {
         m_fact = newFact;
-        m_parent = t;
+        if (t.m_facts == null)
+            m_parent = t;
+        else
+            m_facts = t.m_facts.extend(t.m_size, newFact);
         // m_negcnt = 0;
         m_size = t.m_size + 1;
         m_sortcode = (t.m_sortcode << 3) + newFact.getFactId();
@@ -130,6 +233,7 @@ public class Token implements Serializable {
     public Token(Token t) throws JessException {
         m_fact = t.m_fact;
         m_parent = t.m_parent;
+        m_facts = t.m_facts;
         // m_negcnt = 0;
         m_size = t.m_size;
         m_sortcode = t.m_sortcode;
@@ -192,6 +296,9 @@ public class Token implements Serializable {
         else if (!m_fact.equals(t.m_fact))
             return false;
 
+        else if (m_facts != null || t.m_facts != null)
+            return prefixEquals(t, true);
+
         else if (m_parent == t.m_parent)
             return true;
 
@@ -209,6 +316,9 @@ public class Token implements Serializable {
         else if (m_fact.getFactId() != t.m_fact.getFactId())
             return false;
 
+        else if (m_facts != null || t.m_facts != null)
+            return prefixEquals(t, false);
+
         else if (m_parent == t.m_parent)
             return true;
 
@@ -216,6 +326,24 @@ public class Token implements Serializable {
             return m_parent.fastDataEquals(t.m_parent);
     }
 
+    // Compares all but the top fact in a loop; used when either token
+    // is array-backed. Tokens sharing a fact array share their prefix.
+    private boolean prefixEquals(Token t, boolean compareData) {
+        int n = m_size - 1;
+        if (m_facts != null && m_facts == t.m_facts)
+            return true;
+        for (int i=n-1; i>=0; --i) {
+            Fact mine = fact(i), theirs = t.fact(i);
+            if (mine == theirs)
+                continue;
+            else if (mine.getFactId() != theirs.getFactId())
+                return false;
+            else if (compareData && !mine.equals(theirs))
+                return false;
+        }
+        return true;
+    }
+
 
     /**
      * Compare this token to another object.
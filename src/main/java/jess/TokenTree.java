@@ -93,13 +93,6 @@ class TokenTree implements Serializable {
         return value;
     }
 
-    private Token subsetToken(Token t) {
-        Token parent = t;
-        while (parent.size() > m_fact)
-            parent = parent.getParent();
-        return parent;
-    }
-
     private void rehash() throws JessException {
         //System.out.print(".");
         TokenList[] vecs = m_tokens;
@@ -160,6 +153,10 @@ class TokenTree implements Serializable {
         }
     }
 
+    synchronized int size() {
+        return m_size;
+    }
+
     int getHash() {
         return m_hash;
     }
@@ -223,7 +220,7 @@ class TokenTree implements Serializable {
             if (m_fact == 0)
                 code = t.m_sortcode;
             else
-                code = subsetToken(t).m_sortcode;
+                code = t.prefixSortcode(m_fact);
 
         } else if (m_slot == -1)
             code = t.fact(m_fact).getFactId();
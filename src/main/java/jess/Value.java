@@ -716,7 +716,6 @@ public class Value implements Serializable {
 
             case RU.FUNCALL:
             case RU.LIST:
-                m_objectval.hashCode();
             case RU.STRING:
             case RU.SYMBOL:
                 return (m_objectval != null) ? m_objectval.hashCode() : 0;
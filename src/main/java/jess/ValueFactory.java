@@ -1,6 +1,5 @@
 package jess;
 
-import java.util.HashMap;
 import java.io.Serializable;
 
 /**
@@ -14,7 +13,28 @@ import java.io.Serializable;
  */
 public class ValueFactory implements Serializable {
 
-    private final HashMap m_symbols = new HashMap();
+    private final SymbolTable m_symbols = new SymbolTable();
+    private final Value[] m_constants;
+
+    // Numeric Values are immutable, so small integral ones are shared
+    // by every engine rather than allocated over and over by arithmetic.
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 1023;
+    private static final Value[] s_integers = new Value[SMALL_MAX - SMALL_MIN + 1];
+    private static final Value[] s_floats = new Value[SMALL_MAX - SMALL_MIN + 1];
+    private static final Value[] s_longs = new Value[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        try {
+            for (int i = SMALL_MIN; i <= SMALL_MAX; i++) {
+                s_integers[i - SMALL_MIN] = new Value(i);
+                s_floats[i - SMALL_MIN] = new Value((double) i, RU.FLOAT);
+                s_longs[i - SMALL_MIN] = new LongValue(i);
+            }
+        } catch (JessException cantHappen) {
+            throw new AssertionError(cantHappen);
+        }
+    }
 
     /**
      * Create a new ValueFactory. Provided so that users might subclass this class;
@@ -30,10 +50,12 @@ public class ValueFactory implements Serializable {
                 Funcall.s_else, Funcall.s_elif,
                 Funcall.s_then, Funcall.s_do
         };
+        // The symbol table holds symbols weakly; keep these common ones alive
+        m_constants = new Value[constants.length];
         try {
             for (int i = 0; i < constants.length; i++) {
                 Value constant = constants[i];
-                get(constant.symbolValue(null), constant.type());
+                m_constants[i] = get(constant.symbolValue(null), constant.type());
             }
         } catch (JessException cantHappen) {
             // Silently ignore
@@ -54,16 +76,8 @@ public class ValueFactory implements Serializable {
             case RU.MULTIVARIABLE:
                 return new Variable(v, type);
 
-            case RU.SYMBOL: {
-                synchronized(m_symbols) {
-                    Value symbol = (Value) m_symbols.get(v);
-                    if (symbol == null) {
-                        symbol = new Value(v, RU.SYMBOL);
-                        m_symbols.put(v, symbol);
-                    }
-                    return symbol;
-                }
-            }
+            case RU.SYMBOL:
+                return m_symbols.intern(v);
 
             default:
                 return new Value(v, type);
@@ -71,6 +85,18 @@ public class ValueFactory implements Serializable {
         }
     }
 
+    /**
+     * Create a VARIABLE value that refers to a property of the object the
+     * variable holds, like <tt>?x.name</tt>.
+     * @param v the whole name of the variable, including the property
+     * @param memberChar the character that separates the variable from the property
+     * @return a new Value
+     * @throws JessException if anything goes wrong
+     */
+    public Value getDottedVariable(String v, char memberChar) throws JessException {
+        return new DottedVariable(v, memberChar);
+    }
+
     /**
      * Return a numeric Value object of the given type. Allowed types are RU.LONG, RU.INTEGER, and RU.FLOAT.
      * @param v a numberic value
@@ -80,9 +106,16 @@ public class ValueFactory implements Serializable {
      */
 
     public Value get(double v, int type) throws JessException {
-        if (type == RU.LONG)
-            return get((long) v);
-        return new Value(v, type);
+        switch (type) {
+            case RU.LONG:
+                return get((long) v);
+            case RU.FLOAT:
+                return floating(v);
+            case RU.INTEGER:
+                return integer((int) v);
+            default:
+                return new Value(v, type);
+        }
     }
 
     /**
@@ -93,6 +126,8 @@ public class ValueFactory implements Serializable {
      * @throws JessException
      */
     public Value get(int v, int type) throws JessException {
+        if (type == RU.INTEGER)
+            return integer(v);
         return new Value(v, type);
     }
 
@@ -104,7 +139,7 @@ public class ValueFactory implements Serializable {
      * @throws JessException if anything goes wrong
      */
     public Value get(int v) throws JessException {
-        return new Value(v);
+        return integer(v);
     }
 
     /**
@@ -115,6 +150,35 @@ public class ValueFactory implements Serializable {
      */
 
     public Value get(long v) throws JessException {
+        return longInteger(v);
+    }
+
+    /**
+     * Returns a Value of type RU.INTEGER, shared if the number is small.
+     */
+    static Value integer(int v) {
+        if (v >= SMALL_MIN && v <= SMALL_MAX)
+            return s_integers[v - SMALL_MIN];
+        return new Value(v);
+    }
+
+    /**
+     * Returns a Value of type RU.FLOAT, shared if the number is small and integral.
+     */
+    static Value floating(double v) throws JessException {
+        int i = (int) v;
+        // The bit test keeps -0.0 distinct from 0.0
+        if (i == v && i >= SMALL_MIN && i <= SMALL_MAX && (i != 0 || Double.doubleToRawLongBits(v) == 0L))
+            return s_floats[i - SMALL_MIN];
+        return new Value(v, RU.FLOAT);
+    }
+
+    /**
+     * Returns a LongValue, shared if the number is small.
+     */
+    static Value longInteger(long v) throws JessException {
+        if (v >= SMALL_MIN && v <= SMALL_MAX)
+            return s_longs[(int) v - SMALL_MIN];
         return new LongValue(v);
     }
 
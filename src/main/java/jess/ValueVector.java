@@ -54,6 +54,17 @@ public class ValueVector implements Cloneable, Serializable {
      */
     protected int m_ptr = 0;
 
+    /**
+     * True if Jess built this list itself and no one has changed it since;
+     * see {@link #markInternal}.
+     */
+    private transient boolean m_internal;
+
+    /**
+     * The hash code of an internal list, or 0 if it hasn't been computed.
+     */
+    private transient int m_hash;
+
     /**
      * Construct a ValueVector of the default capacity (10).
      */
@@ -100,6 +111,7 @@ public class ValueVector implements Cloneable, Serializable {
             vv.m_v = new Value[m_ptr];
         }
         vv.m_ptr = m_ptr;
+        vv.changed();
         System.arraycopy(m_v, 0, vv.m_v, 0, m_ptr);
         return vv;
     }
@@ -135,6 +147,7 @@ public class ValueVector implements Cloneable, Serializable {
             m_v = nv;
         }
         m_ptr = i;
+        changed();
         return this;
     }
 
@@ -156,6 +169,7 @@ public class ValueVector implements Cloneable, Serializable {
                                     toStringWithParens());
 
         m_v[i] = val;
+        changed();
         return this;
     }
 
@@ -177,11 +191,12 @@ public class ValueVector implements Cloneable, Serializable {
      */
     public final ValueVector add(Value val) {
         if (m_ptr >= m_v.length) {
-            Value[] nv = new Value[m_v.length * 2];
+            Value[] nv = new Value[Math.max(m_v.length * 2, 4)];
             System.arraycopy(m_v, 0, nv, 0, m_v.length);
             m_v = nv;
         }
         m_v[m_ptr++] = val;
+        changed();
         return this;
     }
 
@@ -272,10 +287,88 @@ public class ValueVector implements Cloneable, Serializable {
         if (i < (m_ptr - 1))
             System.arraycopy(m_v, i + 1, m_v, i, m_ptr - i);
         m_v[--m_ptr] = null;
+        changed();
         return this;
     }
 
 
+    /**
+     * Append elements <tt>from</tt> (inclusive) through <tt>to</tt>
+     * (exclusive) of another ValueVector to this one, resolving each one
+     * in the given context. Elements that are already resolved are copied
+     * in bulk.
+     *
+     * @param src     the ValueVector to copy from
+     * @param from    the index of the first element to copy
+     * @param to      one past the index of the last element to copy
+     * @param context the context in which to resolve the elements
+     * @return this object, so methods can be chained.
+     */
+    final ValueVector addResolved(ValueVector src, int from, int to, Context context) throws JessException {
+        int length = to - from;
+        if (length <= 0)
+            return this;
+        if (m_ptr + length > m_v.length) {
+            Value[] nv = new Value[Math.max(m_v.length * 2, m_ptr + length)];
+            System.arraycopy(m_v, 0, nv, 0, m_ptr);
+            m_v = nv;
+        }
+        Value[] values = src.m_v;
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (!isResolved(values[i])) {
+                System.arraycopy(values, start, m_v, m_ptr, i - start);
+                m_ptr += i - start;
+                m_v[m_ptr++] = values[i].resolveValue(context);
+                start = i + 1;
+            }
+        }
+        System.arraycopy(values, start, m_v, m_ptr, to - start);
+        m_ptr += to - start;
+        changed();
+        return this;
+    }
+
+    /**
+     * Mark this ValueVector as a list that Jess built and will never
+     * change, such as the result of a multifield function. Until it's
+     * next changed, it may be shared rather than copied, and its hash
+     * code is remembered. Lists that come from callers are never marked,
+     * since a caller may refill one and use it again.
+     *
+     * @return this object, so methods can be chained.
+     */
+    final ValueVector markInternal() {
+        m_internal = true;
+        m_hash = 0;
+        return this;
+    }
+
+    private void changed() {
+        m_internal = false;
+        m_hash = 0;
+    }
+
+    /**
+     * Returns true if this is an internal list whose elements are all
+     * already resolved, and none is itself a list. A list like this can
+     * be used as the contents of a multislot as it is.
+     */
+    final boolean isShareable() {
+        if (!m_internal)
+            return false;
+        for (int i = 0; i < m_ptr; i++) {
+            Value v = m_v[i];
+            if (v.type() == RU.LIST || !isResolved(v))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isResolved(Value v) {
+        return !(v instanceof Variable || v instanceof FuncallValue || v instanceof BindingValue);
+    }
+
     /**
      * Compare this ValueVector to another object.
      *
@@ -329,6 +422,7 @@ public class ValueVector implements Cloneable, Serializable {
             dest.m_v[i] = Funcall.NIL;
 
         System.arraycopy(src.m_v, srcPos, dest.m_v, destPos, length);
+        dest.changed();
     }
 
     /**
@@ -390,18 +484,25 @@ public class ValueVector implements Cloneable, Serializable {
     }
 
     /**
-     * Returns the sum of the hashcodes of the members.
+     * Returns a hash code computed from the hash codes of the members.
      */
 
     public int hashCode() {
-        try {
-            int retval = 0;
-            for (int i = 0; i < size(); i++)
-                retval = 31*retval + get(i).hashCode();
-            return retval;
-        } catch (JessException e) {
-            return 0;
+        int retval = m_hash;
+        if (retval == 0) {
+            // Only a list Jess owns, holding nothing that could change
+            // behind our back, keeps its hash code
+            boolean stable = m_internal;
+            for (int i = 0; i < m_ptr; i++) {
+                Value v = m_v[i];
+                retval = 31*retval + v.hashCode();
+                if ((v.type() & (RU.LIST | RU.FUNCALL | RU.JAVA_OBJECT)) != 0)
+                    stable = false;
+            }
+            if (stable)
+                m_hash = retval;
         }
+        return retval;
     }
 
     /**
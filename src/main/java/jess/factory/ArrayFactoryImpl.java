@@ -0,0 +1,54 @@
+package jess.factory;
+
+import jess.*;
+
+import java.io.Serializable;
+
+
+/**
+ * A token factory that creates array-backed tokens. Each token keeps
+ * its facts in an array, shared with the token it was extended from
+ * whenever possible, instead of in a chain of parent tokens; this makes
+ * {@link Token#fact(int)} a constant-time operation and token
+ * comparison a simple loop, which pays off for rules with many
+ * patterns.
+ * <p/>
+ * (C) 2013 Sandia Corporation<br>
+ * @see jess.Rete#setFactory(Factory)
+ */
+
+public class ArrayFactoryImpl implements Factory, Serializable {
+
+    /** The initial capacity of the fact array of a new token. */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final int m_capacity;
+
+    public ArrayFactoryImpl() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial capacity of the fact array of a new token; a good
+     * choice is the number of patterns in the largest rule
+     */
+    public ArrayFactoryImpl(int capacity) {
+        m_capacity = capacity;
+    }
+
+    public Token newToken(Fact firstFact) throws JessException {
+        return new Token(firstFact, m_capacity);
+    }
+
+    public Token newToken(Token token, Fact newFact) throws JessException {
+        return new Token(token, newFact);
+    }
+
+    public Token newToken(Token lt, Token rt) throws JessException {
+        return new Token(lt, rt);
+    }
+
+    public Token newToken(Token token) throws JessException {
+        return new Token(token);
+    }
+}
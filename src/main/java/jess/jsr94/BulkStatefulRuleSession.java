@@ -0,0 +1,46 @@
+package jess.jsr94;
+
+import javax.rules.InvalidRuleSessionException;
+import javax.rules.StatefulRuleSession;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Group versions of the StatefulRuleSession methods that change working
+ * memory. Every StatefulRuleSession Jess creates implements this
+ * interface. As with {@link #addObjects}, each method makes all its
+ * changes under a single lock, and new objects are asserted together, so
+ * changing many objects at once is much faster than changing them one
+ * at a time.
+ * <pre>
+ * StatefulRuleSession session = ...
+ * List handles = session.addObjects(orders);
+ * ...
+ * ((BulkStatefulRuleSession) session).updateObjects(handles, orders);
+ * </pre>
+ * (C) 2013 Sandia Corporation<br>
+ */
+
+public interface BulkStatefulRuleSession extends StatefulRuleSession {
+    /**
+     * Put each object into the corresponding handle, as
+     * {@link #updateObject} does for one handle. If a handle already holds
+     * its new object, the object's shadow fact is brought up to date;
+     * otherwise the old object is removed and the new one added.
+     *
+     * @param handles a list of handles returned by this session
+     * @param objects a list of objects, the same size as the list of handles
+     * @throws InvalidRuleSessionException if the lists differ in size, or on error
+     * @throws RemoteException never
+     */
+    void updateObjects(List handles, List objects) throws RemoteException, InvalidRuleSessionException;
+
+    /**
+     * Remove the object contained in each handle from working memory.
+     *
+     * @param handles a list of handles returned by this session
+     * @throws InvalidRuleSessionException on error
+     * @throws RemoteException never
+     */
+    void removeObjects(List handles) throws RemoteException, InvalidRuleSessionException;
+}
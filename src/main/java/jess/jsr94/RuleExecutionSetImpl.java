@@ -80,8 +80,7 @@ class RuleExecutionSetImpl extends NameDescriptionProperties implements RuleExec
 
     public void reset() throws InvalidRuleSessionException {
         try {
-            for (Iterator it = m_engine.listDefinstances(); it.hasNext();)
-                m_engine.undefinstance(it.next());
+            m_engine.removeAll(m_engine.getDefinstances());
             m_engine.reset();
         } catch (JessException e) {
             throw new InvalidRuleSessionException(e.getMessage(), e);
@@ -105,6 +104,70 @@ class RuleExecutionSetImpl extends NameDescriptionProperties implements RuleExec
         }
     }
 
+    public List addObjects(List objects) throws InvalidRuleSessionException {
+        try {
+            m_engine.addAll(objects);
+            return makeHandles(objects);
+        } catch (JessException e) {
+            throw new InvalidRuleSessionException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * An object that replaces itself is brought up to date in place, or
+     * added again if it has been removed; any other is removed, and its
+     * replacement added. All the removals, then
+     * all the updates, then all the additions are done as groups.
+     */
+    public void updateObjects(List handles, List objects) throws InvalidRuleSessionException {
+        if (handles.size() != objects.size())
+            throw new InvalidRuleSessionException("Got " + handles.size() + " handles but " +
+                                                  objects.size() + " objects");
+        List removed = new ArrayList();
+        List updated = new ArrayList();
+        List added = new ArrayList();
+        for (int i = 0; i < handles.size(); ++i) {
+            Object old = ((HandleImpl) handles.get(i)).getObject();
+            Object o = objects.get(i);
+            if (old == o) {
+                if (m_engine.containsObject(o))
+                    updated.add(o);
+                else
+                    added.add(o);
+            } else {
+                removed.add(old);
+                added.add(o);
+            }
+        }
+        try {
+            m_engine.removeAll(removed);
+            m_engine.updateAll(updated);
+            m_engine.addAll(added);
+        } catch (JessException e) {
+            throw new InvalidRuleSessionException(e.getMessage(), e);
+        }
+        for (int i = 0; i < handles.size(); ++i)
+            ((HandleImpl) handles.get(i)).setObject(objects.get(i));
+    }
+
+    public void removeObjects(List handles) throws InvalidRuleSessionException {
+        List objects = new ArrayList(handles.size());
+        for (Iterator it = handles.iterator(); it.hasNext();)
+            objects.add(((HandleImpl) it.next()).getObject());
+        try {
+            m_engine.removeAll(objects);
+        } catch (JessException e) {
+            throw new InvalidRuleSessionException(e.getMessage(), e);
+        }
+    }
+
+    static List makeHandles(List objects) {
+        List handles = new ArrayList(objects.size());
+        for (Iterator it = objects.iterator(); it.hasNext();)
+            handles.add(new HandleImpl(it.next()));
+        return handles;
+    }
+
     public boolean containsObject(Handle handle) {
         Object o = ((HandleImpl) handle).getObject();
         return m_engine.containsObject(o);
@@ -119,11 +182,12 @@ class RuleExecutionSetImpl extends NameDescriptionProperties implements RuleExec
         }
     }
 
+    /*
+     * Returns a copy of the engine's snapshot, which callers are free
+     * to modify.
+     */
     public List getObjects() {
-        ArrayList list = new ArrayList();
-        for (Iterator it = m_engine.listDefinstances(); it.hasNext();)
-            list.add(it.next());
-        return list;
+        return new ArrayList(m_engine.getDefinstances());
     }
 
     public String getURI() {
@@ -136,7 +200,7 @@ class RuleExecutionSetImpl extends NameDescriptionProperties implements RuleExec
 
     public List getObjects(ObjectFilter objectFilter) {
         ArrayList filtered = new ArrayList();
-        for (Iterator it = m_engine.listDefinstances(); it.hasNext();) {
+        for (Iterator it = m_engine.getDefinstances().iterator(); it.hasNext();) {
             Object o = objectFilter.filter(it.next());
             if (o != null)
                 filtered.add(o);
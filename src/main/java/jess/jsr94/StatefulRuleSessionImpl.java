@@ -4,7 +4,7 @@ import javax.rules.*;
 import java.rmi.RemoteException;
 import java.util.*;
 
-class StatefulRuleSessionImpl extends RuleSessionImpl implements StatefulRuleSession {
+class StatefulRuleSessionImpl extends RuleSessionImpl implements BulkStatefulRuleSession {
 
     StatefulRuleSessionImpl(RuleExecutionSetImpl res) throws RuleSessionCreateException {
         super(res);
@@ -19,38 +19,36 @@ class StatefulRuleSessionImpl extends RuleSessionImpl implements StatefulRuleSes
     }
 
     public List addObjects(List list) throws RemoteException, InvalidRuleSessionException {
-        List handles = new ArrayList();
-        for (Iterator it = list.iterator(); it.hasNext();) {
-            Object o = it.next();
-            handles.add(addObject(o));
-        }
-        return handles;
+        return m_res.addObjects(list);
     }
 
     /*
-     * Removes the object contained in the handle, then adds a new object.
+     * If the handle already holds the object, brings its shadow fact up
+     * to date, or adds the object again if it has been removed. Otherwise removes the object contained in the handle, then
+     * adds the new object.
      */
     public void updateObject(Handle handle, Object o) throws RemoteException, InvalidRuleSessionException, InvalidHandleException {
-        m_res.removeObject(handle);
-        m_res.addObject(o);
-        ((HandleImpl) handle).setObject(o);
+        m_res.updateObjects(Collections.singletonList(handle), Collections.singletonList(o));
+    }
+
+    public void updateObjects(List handles, List objects) throws RemoteException, InvalidRuleSessionException {
+        m_res.updateObjects(handles, objects);
     }
 
     public void removeObject(Handle handle) throws RemoteException, InvalidHandleException, InvalidRuleSessionException {
         m_res.removeObject(handle);
     }
 
+    public void removeObjects(List handles) throws RemoteException, InvalidRuleSessionException {
+        m_res.removeObjects(handles);
+    }
+
     public List getObjects() throws RemoteException, InvalidRuleSessionException {
         return m_res.getObjects();
     }
 
     public List getHandles() throws RemoteException, InvalidRuleSessionException {
-        List handles = new ArrayList();
-        List objects = getObjects();
-        for (Iterator it = objects.iterator(); it.hasNext();) {
-            handles.add(addObject(it.next()));
-        }
-        return handles;
+        return RuleExecutionSetImpl.makeHandles(getObjects());
     }
 
     public List getObjects(ObjectFilter objectFilter) throws RemoteException, InvalidRuleSessionException {
@@ -2,7 +2,6 @@ package jess.jsr94;
 
 import javax.rules.*;
 import java.rmi.RemoteException;
-import java.util.Iterator;
 import java.util.List;
 
 class StatelessRuleSessionImpl extends RuleSessionImpl implements StatelessRuleSession {
@@ -14,8 +13,7 @@ class StatelessRuleSessionImpl extends RuleSessionImpl implements StatelessRuleS
         synchronized(m_res) {
             m_res.reset();
 
-            for (Iterator it = list.iterator(); it.hasNext();)
-                m_res.addObject(it.next());
+            m_res.addObjects(list);
             m_res.run();
             return m_res.getObjects();
         }
@@ -24,8 +22,7 @@ class StatelessRuleSessionImpl extends RuleSessionImpl implements StatelessRuleS
     public List executeRules(List list, ObjectFilter objectFilter) throws InvalidRuleSessionException, RemoteException {
         synchronized(m_res) {
             m_res.reset();
-            for (Iterator it = list.iterator(); it.hasNext();)
-                m_res.addObject(it.next());
+            m_res.addObjects(list);
             m_res.run();
             return m_res.getObjects(objectFilter);
         }
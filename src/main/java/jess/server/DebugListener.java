@@ -92,7 +92,8 @@ public class DebugListener extends Observable implements JessListener, Runnable
         int thread = m_threadIds.get();
         switch (je.getType()) {
             case JessEvent.USERFUNCTION_CALLED:
-                sendRemark("About to call " + je.getObject() + " in " + thread + "(" + getState(thread) + ")");
+                if (DEBUG)
+                    sendRemark("About to call " + je.getObject() + " in " + thread + "(" + getState(thread) + ")");
                 synchronized (m_states) {
                     recordContext(je);
                     checkForBreakpointHit(je, thread);
@@ -109,7 +110,8 @@ public class DebugListener extends Observable implements JessListener, Runnable
                 break;
 
             case JessEvent.USERFUNCTION_RETURNED:
-                sendRemark("Just called " + je.getObject() + " in " + thread);
+                if (DEBUG)
+                    sendRemark("Just called " + je.getObject() + " in " + thread);
                 synchronized (m_states) {
                     recordContext(je);
                     checkForExit(je);
@@ -0,0 +1,211 @@
+package jess.xml;
+
+import jess.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a JessML &lt;fact-list&gt; document, such as one written by
+ * {@link FactListWriter} or "save-facts-xml", and asserts the facts in it.
+ * The document is read with a streaming parser and the facts are asserted
+ * in batches with {@link Rete#assertFacts}, so only one batch of facts is
+ * held in memory at a time, however large the document is.
+ * <pre>
+ * FactListReader reader = new FactListReader(engine);
+ * reader.read(new FileInputStream(filename));
+ * </pre>
+ * (C) 2013 Sandia Corporation<br>
+ * @see FactListWriter
+ */
+
+public class FactListReader {
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final XMLInputFactory s_factory = newFactory();
+
+    private final Rete m_engine;
+    private final ValueFactory m_values;
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructor. This reader will assert the facts it reads into the given Rete object.
+     * @param engine the Rete object to receive the facts
+     */
+    public FactListReader(Rete engine) {
+        m_engine = engine;
+        m_values = engine.getValueFactory();
+    }
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * Set the number of facts that are read before they're asserted together.
+     * @param batchSize the number of facts per batch; must be at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        m_batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Return the number of facts that are read before they're asserted together.
+     * @return the number of facts per batch
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * Read a fact-list document from a stream, honoring the encoding it declares.
+     * The stream is not closed.
+     * @param in the stream to read from
+     * @return the number of facts added to working memory
+     * @throws JessException if the document is malformed, or a fact can't be asserted
+     */
+    public int read(InputStream in) throws JessException {
+        try {
+            return read(s_factory.createXMLStreamReader(in));
+        } catch (XMLStreamException e) {
+            throw parseError(e);
+        }
+    }
+
+    /**
+     * Read a fact-list document from a Reader. The Reader is not closed.
+     * @param in the Reader to read from
+     * @return the number of facts added to working memory
+     * @throws JessException if the document is malformed, or a fact can't be asserted
+     */
+    public int read(Reader in) throws JessException {
+        try {
+            return read(s_factory.createXMLStreamReader(in));
+        } catch (XMLStreamException e) {
+            throw parseError(e);
+        }
+    }
+
+    private int read(XMLStreamReader xml) throws JessException {
+        Context context = m_engine.getGlobalContext();
+        List<Fact> batch = new ArrayList<Fact>(m_batchSize);
+        int count = 0;
+        try {
+            xml.nextTag();
+            expect(xml, JessSAXHandler.FACTLIST);
+            while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                expect(xml, "fact");
+                batch.add(readFact(xml));
+                if (batch.size() >= m_batchSize) {
+                    count += m_engine.assertFacts(batch, context);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty())
+                count += m_engine.assertFacts(batch, context);
+            return count;
+
+        } catch (XMLStreamException e) {
+            throw parseError(e);
+        } finally {
+            try {
+                xml.close();
+            } catch (XMLStreamException ignore) {
+            }
+        }
+    }
+
+    // On entry, positioned at <fact>; on exit, at </fact>.
+    private Fact readFact(XMLStreamReader xml) throws XMLStreamException, JessException {
+        xml.nextTag();
+        expect(xml, "name");
+        Fact fact = new Fact(xml.getElementText(), m_engine);
+        Deftemplate template = fact.getDeftemplate();
+        while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            expect(xml, "slot");
+            xml.nextTag();
+            expect(xml, "name");
+            String slotName = xml.getElementText();
+            if (template.getSlotType(slotName) == RU.MULTISLOT) {
+                ValueVector data = new ValueVector();
+                while (xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                    data.add(readValue(xml));
+                fact.setSlotValue(slotName, new Value(data, RU.LIST));
+            } else {
+                xml.nextTag();
+                fact.setSlotValue(slotName, readValue(xml));
+                xml.nextTag();
+            }
+        }
+        return fact;
+    }
+
+    // On entry, positioned at the start of a value; on exit, at its end.
+    private Value readValue(XMLStreamReader xml) throws XMLStreamException, JessException {
+        String tag = xml.getLocalName();
+        if (tag.equals("value")) {
+            String type = xml.getAttributeValue(null, "type");
+            if (type == null)
+                throw new JessException("FactListReader.readValue", "Element 'value' missing required attribute", "'type'");
+            return decodeValue(xml.getElementText(), RU.getTypeCode(type));
+
+        } else if (tag.equals("list")) {
+            ValueVector list = new ValueVector();
+            while (xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                list.add(readValue(xml));
+            return new Value(list, RU.LIST);
+
+        } else if (tag.equals("fact")) {
+            return new FactIDValue(readFact(xml));
+
+        } else if (tag.equals("funcall")) {
+            xml.nextTag();
+            expect(xml, "name");
+            Funcall funcall = new Funcall(xml.getElementText(), m_engine);
+            while (xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                funcall.arg(readValue(xml));
+            return new FuncallValue(funcall);
+
+        } else {
+            throw new JessException("FactListReader.readValue", "Unrecognized element", tag);
+        }
+    }
+
+    private Value decodeValue(String text, int valueType) throws JessException {
+        switch (valueType) {
+            case RU.SYMBOL:
+                return m_values.get(text, RU.SYMBOL);
+            case RU.STRING:
+                return new Value(text, valueType);
+            case RU.INTEGER:
+                return new Value(Integer.parseInt(text), valueType);
+            case RU.FLOAT:
+                return new Value(Double.parseDouble(text), valueType);
+            case RU.LONG:
+                return new LongValue(Long.parseLong(text));
+            case RU.VARIABLE:
+            case RU.MULTIVARIABLE:
+                return new Variable(RU.removePrefix(text), valueType);
+            default:
+                throw new JessException("FactListReader.decodeValue", "Bad type", valueType);
+        }
+    }
+
+    private static void expect(XMLStreamReader xml, String tag) throws JessException {
+        if (!tag.equals(xml.getLocalName()))
+            throw new JessException("FactListReader.read", "Expected <" + tag + "> but found", "<" + xml.getLocalName() + ">");
+    }
+
+    private static JessException parseError(XMLStreamException e) {
+        return new JessException("FactListReader.read", "Parse error:", e.getMessage());
+    }
+}
@@ -0,0 +1,226 @@
+package jess.xml;
+
+import jess.*;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+
+/**
+ * Writes facts as a JessML &lt;fact-list&gt; document, one fact at a time,
+ * straight to an output stream. Unlike {@link XMLVisitor}, no String is
+ * built for each fact, so a fact list of any size can be written in
+ * constant memory. The document can be read back with {@link FactListReader}
+ * or with the "load-facts" function.
+ * <pre>
+ * FactListWriter writer = new FactListWriter(new FileOutputStream(filename));
+ * for (Iterator it = engine.listFacts(); it.hasNext();)
+ *     writer.writeFact((Fact) it.next());
+ * writer.close();
+ * </pre>
+ * (C) 2013 Sandia Corporation<br>
+ * @see FactListReader
+ */
+
+public class FactListWriter {
+    private static final String ENCODING = "UTF-8";
+    private static final String INDENT = "  ";
+    private static final XMLOutputFactory s_factory = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter m_xml;
+    private final Closeable m_out;
+    private final String m_line = System.getProperty("line.separator");
+    private boolean m_finished;
+
+    /**
+     * Constructor. The document will be written to the given stream in UTF-8.
+     * @param out the stream to write to
+     * @throws JessException if the document can't be started
+     */
+    public FactListWriter(OutputStream out) throws JessException {
+        m_out = out = new BufferedOutputStream(out, 64 * 1024);
+        try {
+            m_xml = s_factory.createXMLStreamWriter(out, ENCODING);
+            m_xml.writeStartDocument(ENCODING, "1.0");
+            startFactList();
+        } catch (XMLStreamException e) {
+            throw new JessException("FactListWriter", "Can't start document", e);
+        }
+    }
+
+    /**
+     * Constructor. The document will be written to the given Writer; the XML
+     * declaration won't name an encoding.
+     * @param out the Writer to write to
+     * @throws JessException if the document can't be started
+     */
+    public FactListWriter(Writer out) throws JessException {
+        m_out = out;
+        try {
+            m_xml = s_factory.createXMLStreamWriter(out);
+            m_xml.writeStartDocument("1.0");
+            startFactList();
+        } catch (XMLStreamException e) {
+            throw new JessException("FactListWriter", "Can't start document", e);
+        }
+    }
+
+    private void startFactList() throws XMLStreamException {
+        m_xml.writeCharacters(m_line);
+        m_xml.writeStartElement(JessSAXHandler.FACTLIST);
+        m_xml.writeCharacters(m_line);
+    }
+
+    /**
+     * Write one fact to the document.
+     * @param fact the fact
+     * @throws JessException if the fact can't be written
+     */
+    public void writeFact(Fact fact) throws JessException {
+        try {
+            writeFact(fact, 0);
+            m_xml.writeCharacters(m_line);
+        } catch (XMLStreamException e) {
+            throw new JessException("FactListWriter.writeFact", "Can't write fact", e);
+        }
+    }
+
+    /**
+     * End the document and flush it to the underlying stream, which is left open.
+     * @throws JessException if the document can't be finished
+     */
+    public void finish() throws JessException {
+        if (m_finished)
+            return;
+        m_finished = true;
+        try {
+            m_xml.writeEndElement();
+            m_xml.writeCharacters(m_line);
+            m_xml.writeEndDocument();
+            m_xml.flush();
+            if (m_out instanceof Flushable)
+                ((Flushable) m_out).flush();
+        } catch (XMLStreamException e) {
+            throw new JessException("FactListWriter.finish", "Can't finish document", e);
+        } catch (IOException e) {
+            throw new JessException("FactListWriter.finish", "I/O Exception", e);
+        }
+    }
+
+    /**
+     * End the document, then close the underlying stream.
+     * @throws JessException if the document can't be finished
+     */
+    public void close() throws JessException {
+        try {
+            finish();
+        } finally {
+            try {
+                m_xml.close();
+                m_out.close();
+            } catch (Exception e) {
+                throw new JessException("FactListWriter.close", "Can't close document", e);
+            }
+        }
+    }
+
+    private void writeFact(Fact fact, int depth) throws JessException, XMLStreamException {
+        Deftemplate dt = fact.getDeftemplate();
+        startElement("fact", depth);
+        textElement("name", fact.getName(), depth + 1);
+        for (int i = 0; i < dt.getNSlots(); ++i) {
+            String name = dt.getSlotName(i);
+            Value val = fact.getSlotValue(name);
+            if (!dt.getSlotDefault(i).equals(val)) {
+                startElement("slot", depth + 1);
+                textElement("name", name, depth + 2);
+                if (val.type() != RU.LIST) {
+                    writeValue(val, depth + 2);
+                } else {
+                    ValueVector list = val.listValue(null);
+                    for (int j = 0; j < list.size(); ++j)
+                        writeValue(list.get(j), depth + 2);
+                }
+                endElement(depth + 1);
+            }
+        }
+        endElement(depth);
+    }
+
+    private void writeValue(Value value, int depth) throws JessException, XMLStreamException {
+        int type = value.type();
+        switch (type) {
+            case RU.FACT:
+                writeFact(value.factValue(null), depth);
+                return;
+
+            case RU.FUNCALL: {
+                Funcall funcall = value.funcallValue(null);
+                startElement("funcall", depth);
+                textElement("name", funcall.get(0).symbolValue(null), depth + 1);
+                for (int i = 1; i < funcall.size(); ++i)
+                    writeValue(funcall.get(i), depth + 1);
+                endElement(depth);
+                return;
+
+            } case RU.LIST: {
+                ValueVector list = value.listValue(null);
+                startElement("list", depth);
+                for (int i = 0; i < list.size(); ++i)
+                    writeValue(list.get(i), depth + 1);
+                endElement(depth);
+                return;
+
+            } case RU.BINDING:
+                type = RU.VARIABLE;
+                break;
+        }
+
+        String text;
+        switch (type) {
+            case RU.SYMBOL:
+            case RU.STRING:
+                text = value.stringValue(null);
+                break;
+            case RU.VARIABLE:
+            case RU.MULTIVARIABLE:
+                text = RU.removePrefix(value.variableValue(null));
+                break;
+            default:
+                text = value.toString();
+                break;
+        }
+        indent(depth);
+        m_xml.writeStartElement("value");
+        m_xml.writeAttribute("type", RU.getTypeName(type));
+        m_xml.writeCharacters(text);
+        m_xml.writeEndElement();
+        m_xml.writeCharacters(m_line);
+    }
+
+    private void indent(int depth) throws XMLStreamException {
+        for (int i = 0; i < depth; ++i)
+            m_xml.writeCharacters(INDENT);
+    }
+
+    private void startElement(String tag, int depth) throws XMLStreamException {
+        indent(depth);
+        m_xml.writeStartElement(tag);
+        m_xml.writeCharacters(m_line);
+    }
+
+    private void endElement(int depth) throws XMLStreamException {
+        indent(depth);
+        m_xml.writeEndElement();
+        m_xml.writeCharacters(m_line);
+    }
+
+    private void textElement(String tag, String text, int depth) throws XMLStreamException {
+        indent(depth);
+        m_xml.writeStartElement(tag);
+        m_xml.writeCharacters(text);
+        m_xml.writeEndElement();
+        m_xml.writeCharacters(m_line);
+    }
+}